@@ -0,0 +1,101 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.swing.SwingUtilities;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Comment;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+import org.openstreetmap.josm.plugins.directionofflow.util.Util;
+
+
+/**
+ * Retrieves the comments of the selected road segment in the background. Only the latest request is of interest: a
+ * new request cancels the previous one if it has not started yet, and discards its result otherwise. The methods of
+ * this class should be called from the EDT; the loaded comments are also delivered on the EDT.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+abstract class CommentLoader {
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(Util.threadFactory(
+            "dof-comment-loader"));
+
+    /* the latest request; accessed only from the EDT */
+    private LoadTask current;
+    private Future<?> future;
+
+
+    /**
+     * Starts loading the comments of the given road segment. The previous request is superseded.
+     *
+     * @param roadSegment a {@code RoadSegment}
+     */
+    void load(final RoadSegment roadSegment) {
+        cancel();
+        current = new LoadTask(roadSegment);
+        future = executor.submit(current);
+    }
+
+    /**
+     * Cancels the latest request. The result of a request that is already running is discarded.
+     */
+    void cancel() {
+        if (future != null) {
+            future.cancel(false);
+        }
+        current = null;
+        future = null;
+    }
+
+    /**
+     * Invoked on the EDT with the comments of the latest requested road segment.
+     *
+     * @param roadSegment the {@code RoadSegment} whose comments were loaded
+     * @param comments the list of {@code Comment}s
+     */
+    abstract void commentsLoaded(RoadSegment roadSegment, List<Comment> comments);
+
+
+    private final class LoadTask implements Runnable {
+
+        private final RoadSegment roadSegment;
+
+        private LoadTask(final RoadSegment roadSegment) {
+            this.roadSegment = roadSegment;
+        }
+
+        @Override
+        public void run() {
+            final List<Comment> comments = ServiceHandler.getInstance().retrieveComments(roadSegment);
+            SwingUtilities.invokeLater(new Runnable() {
+
+                @Override
+                public void run() {
+                    if (current == LoadTask.this) {
+                        current = null;
+                        future = null;
+                        commentsLoaded(roadSegment, comments);
+                    }
+                }
+            });
+        }
+    }
+}
\ No newline at end of file
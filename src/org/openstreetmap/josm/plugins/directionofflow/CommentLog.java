@@ -0,0 +1,278 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Comment;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Status;
+
+
+/**
+ * Write-ahead log of the comments waiting to be sent to the service. Every queued comment is appended to the log
+ * before it is accepted, and an acknowledgement is appended once the service received it; the comments without
+ * acknowledgement are sent again after a restart. Each record is stored as its length, its CRC32 checksum and its
+ * content, and the file is synced to the disk after every write. A record that was not written completely is detected
+ * by its length or checksum; it and everything after it is discarded. If a write fails, the file is truncated to its
+ * previous length, such that the records written later remain readable. The methods of this class are thread-safe:
+ * comments are appended from the EDT while the acknowledgements are written by the sending thread.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+final class CommentLog {
+
+    /** the identifier of the entries which could not be written to the log */
+    static final long NOT_LOGGED = -1;
+
+    private static final byte ADD = 1;
+    private static final byte ACK = 2;
+    private static final int NULL_ORDINAL = -1;
+
+    /* an upper limit for the record length, used for detecting corrupted length fields */
+    private static final int MAX_RECORD_SIZE = 16 * 1024 * 1024;
+
+    private final File file;
+    private long nextId;
+    private int pendingCount;
+
+
+    /**
+     * Builds a log stored in the given file. The file is created at the first write.
+     *
+     * @param file the log file
+     */
+    CommentLog(final File file) {
+        this.file = file;
+    }
+
+
+    /**
+     * Reads the log and returns the comments that were not acknowledged, in the order they were logged. The incomplete
+     * or corrupted records at the end of the log are truncated.
+     *
+     * @return a list of {@code Entry} objects
+     * @throws IOException if the log cannot be read
+     */
+    synchronized List<Entry> replay() throws IOException {
+        final Map<Long, Entry> entries = new LinkedHashMap<>();
+        if (file.exists()) {
+            try (RandomAccessFile input = new RandomAccessFile(file, "rw")) {
+                long validLength = 0;
+                try {
+                    while (validLength < input.length()) {
+                        final int length = input.readInt();
+                        final long checksum = input.readInt() & 0xFFFFFFFFL;
+                        if (length <= 0 || length > MAX_RECORD_SIZE) {
+                            break;
+                        }
+                        final byte[] content = new byte[length];
+                        input.readFully(content);
+                        if (checksum(content) != checksum) {
+                            break;
+                        }
+                        readRecord(content, entries);
+                        validLength = input.getFilePointer();
+                    }
+                } catch (final EOFException e) {
+                    // the last record was not written completely
+                }
+                if (validLength < input.length()) {
+                    input.setLength(validLength);
+                    input.getFD().sync();
+                }
+            }
+        }
+        pendingCount = entries.size();
+        return new ArrayList<>(entries.values());
+    }
+
+    /**
+     * Appends the given comment to the log.
+     *
+     * @param comment a {@code Comment}
+     * @param roadSegments the list of commented {@code RoadSegment}s
+     * @return the logged {@code Entry}
+     * @throws IOException if the log cannot be written
+     */
+    synchronized Entry append(final Comment comment, final List<RoadSegment> roadSegments) throws IOException {
+        final Entry entry = new Entry(nextId, comment, roadSegments);
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(content)) {
+            out.writeByte(ADD);
+            out.writeLong(entry.id);
+            writeString(out, comment.getUsername());
+            writeString(out, comment.getText());
+            out.writeInt(comment.getStatus() != null ? comment.getStatus().ordinal() : NULL_ORDINAL);
+            out.writeInt(roadSegments.size());
+            for (final RoadSegment roadSegment : roadSegments) {
+                out.writeLong(roadSegment.getWayId());
+                out.writeLong(roadSegment.getFromNodeId());
+                out.writeLong(roadSegment.getToNodeId());
+            }
+        }
+        write(Collections.singletonList(content.toByteArray()));
+        nextId++;
+        pendingCount++;
+        return entry;
+    }
+
+    /**
+     * Records that the given comments were received by the service. If no comment remains pending, the log is
+     * emptied.
+     *
+     * @param entries the acknowledged entries
+     * @throws IOException if the log cannot be written
+     */
+    synchronized void acknowledge(final Collection<Entry> entries) throws IOException {
+        final List<Entry> loggedEntries = new ArrayList<>(entries.size());
+        for (final Entry entry : entries) {
+            if (entry.id != NOT_LOGGED) {
+                loggedEntries.add(entry);
+            }
+        }
+        pendingCount -= loggedEntries.size();
+        if (pendingCount <= 0) {
+            pendingCount = 0;
+            if (file.exists()) {
+                try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+                    output.setLength(0);
+                    output.getFD().sync();
+                }
+            }
+        } else if (!loggedEntries.isEmpty()) {
+            final List<byte[]> records = new ArrayList<>();
+            for (final Entry entry : loggedEntries) {
+                final ByteArrayOutputStream content = new ByteArrayOutputStream();
+                try (DataOutputStream out = new DataOutputStream(content)) {
+                    out.writeByte(ACK);
+                    out.writeLong(entry.id);
+                }
+                records.add(content.toByteArray());
+            }
+            write(records);
+        }
+    }
+
+    private void write(final List<byte[]> records) throws IOException {
+        if (!file.getParentFile().exists()) {
+            file.getParentFile().mkdirs();
+        }
+        final ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(buffer)) {
+            for (final byte[] content : records) {
+                out.writeInt(content.length);
+                out.writeInt((int) checksum(content));
+                out.write(content);
+            }
+        }
+        try (RandomAccessFile output = new RandomAccessFile(file, "rw")) {
+            final long length = output.length();
+            try {
+                output.seek(length);
+                output.write(buffer.toByteArray());
+                output.getFD().sync();
+            } catch (final IOException e) {
+                // a partially written record would hide the records appended after it from the replay
+                try {
+                    output.setLength(length);
+                } catch (final IOException truncateException) {
+                    e.addSuppressed(truncateException);
+                }
+                throw e;
+            }
+        }
+    }
+
+    private void readRecord(final byte[] content, final Map<Long, Entry> entries) throws IOException {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(content))) {
+            final byte type = in.readByte();
+            final long id = in.readLong();
+            nextId = Math.max(nextId, id + 1);
+            if (type == ADD) {
+                final String username = readString(in);
+                final String text = readString(in);
+                final int ordinal = in.readInt();
+                final Status status = ordinal >= 0 && ordinal < Status.values().length ? Status.values()[ordinal]
+                        : null;
+                final int count = in.readInt();
+                final List<RoadSegment> roadSegments = new ArrayList<>(count);
+                for (int i = 0; i < count; i++) {
+                    roadSegments.add(new RoadSegment(in.readLong(), in.readLong(), in.readLong()));
+                }
+                entries.put(id, new Entry(id, new Comment(username, null, text, status), roadSegments));
+            } else if (type == ACK) {
+                entries.remove(id);
+            }
+        }
+    }
+
+    private static long checksum(final byte[] content) {
+        final CRC32 crc = new CRC32();
+        crc.update(content);
+        return crc.getValue();
+    }
+
+    private static void writeString(final DataOutputStream out, final String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readString(final DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+
+    /**
+     * A comment waiting to be sent to the service.
+     */
+    static final class Entry {
+
+        private final long id;
+        private final Comment comment;
+        private final List<RoadSegment> roadSegments;
+
+        Entry(final long id, final Comment comment, final List<RoadSegment> roadSegments) {
+            this.id = id;
+            this.comment = comment;
+            this.roadSegments = roadSegments;
+        }
+
+        Comment getComment() {
+            return comment;
+        }
+
+        List<RoadSegment> getRoadSegments() {
+            return roadSegments;
+        }
+    }
+}
\ No newline at end of file
@@ -0,0 +1,311 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Comment;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Status;
+import org.openstreetmap.josm.plugins.directionofflow.service.DirectionOfFlowService;
+import org.openstreetmap.josm.plugins.directionofflow.service.DirectionOfFlowServiceException;
+import org.openstreetmap.josm.plugins.directionofflow.util.Util;
+import org.openstreetmap.josm.plugins.directionofflow.util.http.HttpConnectorException;
+
+
+/**
+ * Queues the comments created by the user and sends them to the service in batches. The queued comments are sent
+ * once the number of commented road segments reaches the batch size, or when the batch delay has elapsed since the
+ * first comment was queued. Consecutive comments having the same author, text and status are sent as a single comment
+ * on all the road segments they were added to.
+ * <p>
+ * Every comment is written to a {@code CommentLog} before it is queued, and the comments which were not sent are
+ * queued again when the outbox is built, such that no comment is lost if JOSM is closed or the service cannot be
+ * reached. If the service cannot be reached, sending is retried with an exponentially growing delay.
+ *
+ * @author Beata
+ * @version $Revision: 2 $
+ */
+abstract class CommentOutbox {
+
+    /* the maximum number of doublings of the retry delay, prevents overflow */
+    private static final int MAX_BACKOFF_EXPONENT = 20;
+
+    private final DirectionOfFlowService service;
+    private final CommentLog log;
+    private final int batchSize;
+    private final int batchDelay;
+    private final int retryDelay;
+    private final int retryMaxDelay;
+    private final ScheduledThreadPoolExecutor executor;
+
+    /* guarded by this */
+    private final List<CommentLog.Entry> queue = new ArrayList<>();
+    private int queuedSegments;
+    private ScheduledFuture<?> scheduledSend;
+    private int failedAttempts;
+
+    /* the statuses the road segments had before the queued comments changed them; guarded by this */
+    private final Map<CommentLog.Entry, Status[]> previousStatuses = new HashMap<>();
+
+
+    /**
+     * Builds a new outbox. The comments which were logged but not sent by a previous outbox are queued.
+     *
+     * @param service the {@code DirectionOfFlowService} used for sending the comments
+     * @param logFile the file of the {@code CommentLog}
+     * @param batchSize the number of commented road segments that triggers sending
+     * @param batchDelay the maximum time a comment is queued, in milliseconds
+     * @param retryDelay the delay of the first retry, in milliseconds
+     * @param retryMaxDelay the maximum delay between two retries, in milliseconds
+     */
+    CommentOutbox(final DirectionOfFlowService service, final File logFile, final int batchSize, final int batchDelay,
+            final int retryDelay, final int retryMaxDelay) {
+        this.service = service;
+        this.log = new CommentLog(logFile);
+        this.batchSize = batchSize;
+        this.batchDelay = batchDelay;
+        this.retryDelay = retryDelay;
+        this.retryMaxDelay = retryMaxDelay;
+        this.executor = new ScheduledThreadPoolExecutor(1, Util.threadFactory("dof-comment-outbox"));
+        try {
+            final List<CommentLog.Entry> entries = log.replay();
+            if (!entries.isEmpty()) {
+                Main.info("Direction of flow: resending " + entries.size() + " logged comments");
+                synchronized (this) {
+                    enqueue(entries);
+                }
+            }
+        } catch (final IOException e) {
+            Main.warn("Direction of flow: cannot read the comment log " + logFile + ": " + e.getMessage());
+        }
+    }
+
+
+    /**
+     * Logs the given comment and queues it for the given road segments. The comment is kept only in memory if the
+     * log cannot be written. If the comment has a status, the status of the road segments is changed immediately; it
+     * is restored if the service rejects the comment. Should be called from the EDT; the comment is synced to the log
+     * before the method returns, such that an accepted comment is not lost even if JOSM is closed right afterwards.
+     *
+     * @param comment a {@code Comment}
+     * @param roadSegments the list of commented {@code RoadSegment}s
+     */
+    synchronized void add(final Comment comment, final List<RoadSegment> roadSegments) {
+        CommentLog.Entry entry;
+        try {
+            entry = log.append(comment, roadSegments);
+        } catch (final IOException e) {
+            Main.warn("Direction of flow: cannot write the comment log: " + e.getMessage());
+            entry = new CommentLog.Entry(CommentLog.NOT_LOGGED, comment, roadSegments);
+        }
+        if (comment.getStatus() != null) {
+            final Status[] statuses = new Status[roadSegments.size()];
+            for (int i = 0; i < statuses.length; i++) {
+                statuses[i] = roadSegments.get(i).getStatus();
+                roadSegments.get(i).setStatus(comment.getStatus());
+            }
+            previousStatuses.put(entry, statuses);
+        }
+        final List<CommentLog.Entry> entries = new ArrayList<>(1);
+        entries.add(entry);
+        enqueue(entries);
+    }
+
+    /**
+     * Sends the queued comments without waiting for the batch or retry delay.
+     */
+    synchronized void flush() {
+        if (scheduledSend != null) {
+            scheduledSend.cancel(false);
+        }
+        scheduledSend = null;
+        if (!queue.isEmpty()) {
+            executor.execute(new SendTask());
+        }
+    }
+
+    /**
+     * Invoked from the outbox thread if the service rejected a comment or the comment could not be sent for a reason
+     * other than a connection failure. The rejected comment is not sent again.
+     *
+     * @param e the {@code DirectionOfFlowServiceException} thrown by the service
+     */
+    abstract void handleFailure(DirectionOfFlowServiceException e);
+
+    /**
+     * Invoked on the EDT after the status of the given road segments was restored, since the service rejected the
+     * comment changing it.
+     *
+     * @param roadSegments the list of {@code RoadSegment}s having their previous status
+     */
+    abstract void statusRestored(List<RoadSegment> roadSegments);
+
+
+    /* guarded by this; while retrying, the queued comments wait for the scheduled retry */
+    private void enqueue(final List<CommentLog.Entry> entries) {
+        for (final CommentLog.Entry entry : entries) {
+            queue.add(entry);
+            queuedSegments += entry.getRoadSegments().size();
+        }
+        if (queuedSegments >= batchSize && failedAttempts == 0) {
+            flush();
+        } else if (scheduledSend == null) {
+            scheduledSend = executor.schedule(new SendTask(), batchDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /* puts the unsent entries back to the front of the queue and schedules a retry */
+    private synchronized void retry(final List<CommentLog.Entry> entries, final DirectionOfFlowServiceException e) {
+        queue.addAll(0, entries);
+        for (final CommentLog.Entry entry : entries) {
+            queuedSegments += entry.getRoadSegments().size();
+        }
+        final long delay = Math.min((long) retryDelay << Math.min(failedAttempts, MAX_BACKOFF_EXPONENT),
+                retryMaxDelay);
+        failedAttempts++;
+        Main.warn("Direction of flow: cannot send " + queue.size() + " comments, retrying in " + delay + " ms: "
+                + e.getMessage());
+        if (scheduledSend != null) {
+            scheduledSend.cancel(false);
+        }
+        scheduledSend = executor.schedule(new SendTask(), delay, TimeUnit.MILLISECONDS);
+    }
+
+    private void acknowledge(final List<CommentLog.Entry> entries) {
+        synchronized (this) {
+            for (final CommentLog.Entry entry : entries) {
+                previousStatuses.remove(entry);
+            }
+        }
+        try {
+            log.acknowledge(entries);
+        } catch (final IOException e) {
+            // the comments are sent again after a restart
+            Main.warn("Direction of flow: cannot write the comment log: " + e.getMessage());
+        }
+    }
+
+    /* restores the status of the road segments of the rejected entries, unless a later comment changed it */
+    private void restoreStatuses(final List<CommentLog.Entry> entries) {
+        final Map<CommentLog.Entry, Status[]> restored = new LinkedHashMap<>();
+        synchronized (this) {
+            for (final CommentLog.Entry entry : entries) {
+                final Status[] statuses = previousStatuses.get(entry);
+                if (statuses != null) {
+                    restored.put(entry, statuses);
+                }
+            }
+        }
+        if (!restored.isEmpty()) {
+            SwingUtilities.invokeLater(new Runnable() {
+
+                @Override
+                public void run() {
+                    final List<RoadSegment> restoredSegments = new ArrayList<>();
+                    for (final Map.Entry<CommentLog.Entry, Status[]> item : restored.entrySet()) {
+                        final List<RoadSegment> roadSegments = item.getKey().getRoadSegments();
+                        final Status status = item.getKey().getComment().getStatus();
+                        for (int i = 0; i < roadSegments.size(); i++) {
+                            if (roadSegments.get(i).getStatus() == status) {
+                                roadSegments.get(i).setStatus(item.getValue()[i]);
+                                restoredSegments.add(roadSegments.get(i));
+                            }
+                        }
+                    }
+                    if (!restoredSegments.isEmpty()) {
+                        statusRestored(restoredSegments);
+                    }
+                    if (Main.map != null) {
+                        Main.map.repaint();
+                    }
+                }
+            });
+        }
+    }
+
+
+    private final class SendTask implements Runnable {
+
+        @Override
+        public void run() {
+            final List<CommentLog.Entry> batch;
+            synchronized (CommentOutbox.this) {
+                batch = new ArrayList<>(queue);
+                queue.clear();
+                queuedSegments = 0;
+                scheduledSend = null;
+            }
+            int start = 0;
+            while (start < batch.size()) {
+                final Comment comment = batch.get(start).getComment();
+                final Set<RoadSegment> roadSegments = new LinkedHashSet<>();
+                int end = start;
+                while (end < batch.size() && sameGroup(comment, batch.get(end).getComment())) {
+                    roadSegments.addAll(batch.get(end).getRoadSegments());
+                    end++;
+                }
+                try {
+                    service.comment(comment, new ArrayList<>(roadSegments));
+                    acknowledge(batch.subList(start, end));
+                } catch (final DirectionOfFlowServiceException e) {
+                    if (e.getCause() instanceof HttpConnectorException || e.getCause() instanceof IOException) {
+                        // the service could not be reached
+                        retry(batch.subList(start, batch.size()), e);
+                        return;
+                    }
+                    // the service rejected the comment or its response is invalid, sending it again would fail as well
+                    reject(batch.subList(start, end), e);
+                } catch (final RuntimeException e) {
+                    reject(batch.subList(start, end), new DirectionOfFlowServiceException(e));
+                }
+                start = end;
+            }
+            synchronized (CommentOutbox.this) {
+                failedAttempts = 0;
+            }
+        }
+
+        /* drops the given entries without sending them again */
+        private void reject(final List<CommentLog.Entry> entries, final DirectionOfFlowServiceException e) {
+            restoreStatuses(entries);
+            acknowledge(entries);
+            handleFailure(e);
+        }
+
+        /* groups the comments having the same author, text and status */
+        private boolean sameGroup(final Comment comment, final Comment other) {
+            return equals(comment.getUsername(), other.getUsername()) && equals(comment.getText(), other.getText())
+                    && comment.getStatus() == other.getStatus();
+        }
+
+        private boolean equals(final String value1, final String value2) {
+            return value1 == null ? value2 == null : value1.equals(value2);
+        }
+    }
+}
\ No newline at end of file
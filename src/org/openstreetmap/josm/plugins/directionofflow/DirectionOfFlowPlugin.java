@@ -20,6 +20,7 @@ import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.util.ArrayList;
 import java.util.List;
 import javax.swing.SwingUtilities;
 import javax.swing.Timer;
@@ -44,6 +45,8 @@ import org.openstreetmap.josm.plugins.directionofflow.entity.Status;
 import org.openstreetmap.josm.plugins.directionofflow.gui.details.DirectionOfFlowDetailsDialog;
 import org.openstreetmap.josm.plugins.directionofflow.gui.layer.DirectionOfFlowLayer;
 import org.openstreetmap.josm.plugins.directionofflow.observer.CommentObserver;
+import org.openstreetmap.josm.plugins.directionofflow.observer.StatusRestoreObserver;
+import org.openstreetmap.josm.plugins.directionofflow.service.SearchListener;
 import org.openstreetmap.josm.plugins.directionofflow.util.TipDialog;
 import org.openstreetmap.josm.plugins.directionofflow.util.Util;
 import org.openstreetmap.josm.plugins.directionofflow.util.cnf.Config;
@@ -55,14 +58,36 @@ import org.openstreetmap.josm.plugins.directionofflow.util.pref.PreferenceManage
  * Defines the main functionality of the direction of flow plugin.
  *
  * @author Beata
- * @version $Revision: 47 $
+ * @version $Revision: 48 $
  */
 public class DirectionOfFlowPlugin extends Plugin
-implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceChangedListener, CommentObserver {
+implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceChangedListener, CommentObserver,
+StatusRestoreObserver {
+
+    /* the number of milliseconds in a second; comment timestamps are expressed in seconds */
+    private static final long UNIX_TSTP = 1000;
+
+    /* the minimum time between two displays of partial search results, in milliseconds */
+    private static final int UPDATE_INTERVAL = 100;
 
     private DirectionOfFlowLayer layer;
     private DirectionOfFlowDetailsDialog dialog;
-    private Timer zoomTimer;
+
+    private final SearchScheduler searchScheduler = new SearchScheduler();
+
+    /* the search filter of the data displayed by the layer; accessed only from the EDT */
+    private SearchFilter dataSetFilter;
+
+    /* the comments displayed in the details dialog; accessed only from the EDT */
+    private List<Comment> displayedComments;
+
+    private final CommentLoader commentLoader = new CommentLoader() {
+
+        @Override
+        void commentsLoaded(final RoadSegment roadSegment, final List<Comment> comments) {
+            displaySelectedData(roadSegment, comments);
+        }
+    };
 
 
     /**
@@ -109,6 +134,10 @@ implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceCha
             NavigatableComponent.removeZoomChangeListener(this);
             Main.map.mapView.removeMouseListener(this);
             Main.pref.removePreferenceChangeListener(this);
+            ServiceHandler.getInstance().registerStatusRestoreObserver(null);
+            searchScheduler.cancel();
+            commentLoader.cancel();
+            ServiceHandler.getInstance().flushComments();
             PreferenceManager.getInstance().saveErrorSuppressFlag(false);
 
             // remove toggle action
@@ -135,20 +164,9 @@ implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceCha
     @Override
     public void zoomChanged() {
         if (layer != null && layer.isVisible()) {
-            if (zoomTimer != null && zoomTimer.isRunning()) {
-                // if timer is running restart it
-                zoomTimer.restart();
-            } else {
-                zoomTimer = new Timer(Config.getInstance().getSearchDelay(), new ActionListener() {
-
-                    @Override
-                    public void actionPerformed(final ActionEvent event) {
-                        Main.worker.execute(new DataUpdateThread());
-                    }
-                });
-                zoomTimer.setRepeats(false);
-                zoomTimer.start();
-            }
+            layer.viewChanged();
+            // replaces the previous request, such that only the latest view is searched
+            searchScheduler.schedule(new DataUpdateThread(true), Config.getInstance().getSearchDelay());
         }
     }
 
@@ -166,16 +184,11 @@ implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceCha
             final RoadSegment roadSegment = layer.nearbyRoadSegment(event.getPoint(), multiSelect);
             if (roadSegment != null) {
                 if (!roadSegment.equals(selectedRoadSegment)) {
-                    SwingUtilities.invokeLater(new Runnable() {
-
-                        @Override
-                        public void run() {
-                            retrieveComments(roadSegment);
-                        }
-                    });
+                    retrieveComments(roadSegment);
                 }
             } else if (!multiSelect) {
                 // clear selection
+                commentLoader.cancel();
                 updateSelectedData(null, null);
             }
         }
@@ -207,7 +220,7 @@ implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceCha
     public void preferenceChanged(final PreferenceChangeEvent event) {
         if (event != null && (event.getNewValue() != null && !event.getNewValue().equals(event.getOldValue()))) {
             if (event.getKey().equals(Keys.FILTERS_CHANGED)) {
-                Main.worker.execute(new DataUpdateThread());
+                searchScheduler.schedule(new DataUpdateThread(false), 0);
             }
         }
     }
@@ -218,23 +231,48 @@ implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceCha
     public void createComment(final Comment comment) {
         final List<RoadSegment> selectedRoadSegments = layer.getSelectedRoadSegments();
         if (!selectedRoadSegments.isEmpty()) {
-            Main.worker.execute(new Runnable() {
+            // the comments being loaded do not contain the new comment
+            commentLoader.cancel();
+            // the comment is sent later; the changes are displayed without waiting for the service
+            // the status of the road segments is changed by the outbox, which restores it if the comment is rejected
+            ServiceHandler.getInstance().comment(comment, selectedRoadSegments);
+            final Status statusFilter = PreferenceManager.getInstance().loadSearchFilter().getStatus();
+            if (comment.getStatus() == null || statusFilter == null || (comment.getStatus() == statusFilter)) {
+                final List<Comment> comments = new ArrayList<>();
+                comments.add(new Comment(comment.getUsername(), System.currentTimeMillis() / UNIX_TSTP,
+                        comment.getText(), comment.getStatus()));
+                if (displayedComments != null) {
+                    comments.addAll(displayedComments);
+                }
+                updateSelectedData(layer.lastSelectedRoadSegment(), comments);
+            } else {
+                // the road segments no longer match the search filter; they are displayed again by statusRestored
+                // if the comment is rejected
+                removeRoadSegments(selectedRoadSegments);
+                updateSelectedData(null, null);
+            }
+        }
+    }
 
-                @Override
-                public void run() {
-                    ServiceHandler.getInstance().comment(comment, selectedRoadSegments);
-                    // reload data
-                    if (comment.getStatus() != null) {
-                        Main.worker.execute(new DataUpdateThread());
-                    }
-                    final Status statusFilter = PreferenceManager.getInstance().loadSearchFilter().getStatus();
-                    if (comment.getStatus() == null || statusFilter == null || (comment.getStatus() == statusFilter)) {
-                        retrieveComments(layer.lastSelectedRoadSegment());
-                    } else {
-                        updateSelectedData(null, null);
-                    }
+
+    /* StatusRestoreObserver method */
+    @Override
+    public void statusRestored(final List<RoadSegment> roadSegments) {
+        // the road segments removed by the rejected comment match the search filter again
+        final DataSet dataSet = layer != null ? layer.getDataSet() : null;
+        if (dataSet != null) {
+            final Status statusFilter = PreferenceManager.getInstance().loadSearchFilter().getStatus();
+            final List<RoadSegment> restored = new ArrayList<>();
+            for (final RoadSegment roadSegment : roadSegments) {
+                if (statusFilter == null || roadSegment.getStatus() == statusFilter) {
+                    restored.add(roadSegment);
                 }
-            });
+            }
+            final DataSet result = new DataSet(dataSet.getClusters(), new ArrayList<>(dataSet.getRoadSegments()));
+            result.append(new DataSet(null, restored));
+            if (result.getRoadSegments().size() > dataSet.getRoadSegments().size()) {
+                layer.setDataSet(result);
+            }
         }
     }
 
@@ -253,15 +291,35 @@ implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceCha
             Main.map.mapView.addMouseListener(this);
         }
         Main.pref.addPreferenceChangeListener(this);
+        ServiceHandler.getInstance().registerStatusRestoreObserver(this);
         if (dialog != null) {
             dialog.registerCommentObserver(this);
         }
     }
 
+    /*
+     * Selects the given road segment and starts loading its comments in the background; a loading message is displayed
+     * until the comments arrive. Invoked from the EDT.
+     */
     private void retrieveComments(final RoadSegment roadSegment) {
-        if (roadSegment != null) {
-            final List<Comment> comments = ServiceHandler.getInstance().retrieveComments(roadSegment);
-            updateSelectedData(roadSegment, comments);
+        displayedComments = null;
+        dialog.updateUILoading(roadSegment);
+        layer.updateSelectedRoadSegment(roadSegment);
+        Main.map.repaint();
+        commentLoader.load(roadSegment);
+    }
+
+    private void removeRoadSegments(final List<RoadSegment> roadSegments) {
+        final DataSet dataSet = layer.getDataSet();
+        if (dataSet != null) {
+            final DataSet removed = new DataSet(null, roadSegments);
+            final List<RoadSegment> remaining = new ArrayList<>();
+            for (final RoadSegment roadSegment : dataSet.getRoadSegments()) {
+                if (!removed.contains(roadSegment)) {
+                    remaining.add(roadSegment);
+                }
+            }
+            layer.setDataSet(new DataSet(dataSet.getClusters(), remaining));
         }
     }
 
@@ -270,13 +328,18 @@ implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceCha
 
             @Override
             public void run() {
-                dialog.updateUI(roadSegment, comments);
-                layer.updateSelectedRoadSegment(roadSegment);
-                Main.map.repaint();
+                displaySelectedData(roadSegment, comments);
             }
         });
     }
 
+    private void displaySelectedData(final RoadSegment roadSegment, final List<Comment> comments) {
+        displayedComments = comments;
+        dialog.updateUI(roadSegment, comments);
+        layer.updateSelectedRoadSegment(roadSegment);
+        Main.map.repaint();
+    }
+
     /*
      * Enables/disables the left side MissingGeometry window. Also adds the layer if was not already added.
      */
@@ -309,8 +372,17 @@ implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceCha
         }
     }
 
-    /* updates the data from the current view */
-    private class DataUpdateThread implements Runnable {
+    /*
+     * Updates the data from the current view. An incremental update keeps the road segments already displayed around
+     * the view; it is used when the view changes, since the data of the previous view is still valid.
+     */
+    private class DataUpdateThread extends SearchScheduler.Request {
+
+        private final boolean incremental;
+
+        private DataUpdateThread(final boolean incremental) {
+            this.incremental = incremental;
+        }
 
         @Override
         public void run() {
@@ -319,18 +391,152 @@ implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceCha
                 if (bbox != null) {
                     final int zoom = Util.zoom(Main.map.mapView.getRealBounds());
                     final SearchFilter filter = PreferenceManager.getInstance().loadSearchFilter();
-                    final DataSet result = ServiceHandler.getInstance().search(bbox, filter, zoom);
+
+                    // display the locally stored data while the service is contacted; it may be outdated or
+                    // incomplete, therefore it is displayed as a partial result
+                    final DataSet localResult = ServiceHandler.getInstance().searchLocal(bbox, filter, zoom);
+                    if (!localResult.getClusters().isEmpty() || !localResult.getRoadSegments().isEmpty()) {
+                        SwingUtilities.invokeLater(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                if (!isSuperseded()) {
+                                    updateLayer(localResult, bbox, filter, zoom, true);
+                                }
+                            }
+                        });
+                    }
+
+                    final StreamListener listener = new StreamListener(bbox, filter, zoom);
+                    final DataSet result = ServiceHandler.getInstance().search(bbox, filter, zoom, listener);
+                    if (!isSuperseded()) {
+                        SwingUtilities.invokeLater(new Runnable() {
+
+                            @Override
+                            public void run() {
+                                listener.finish();
+                                // a newer request may have been scheduled meanwhile
+                                if (complete()) {
+                                    new TipDialog().displayDialog(zoom);
+                                    updateLayer(result, bbox, filter, zoom, false);
+                                }
+                            }
+                        });
+                    }
+
+                }
+            }
+        }
+
+        private void updateLayer(final DataSet result, final BoundingBox bbox, final SearchFilter filter,
+                final int zoom, final boolean partial) {
+            if (layer != null) {
+                final DataSet dataSet = layer.getDataSet();
+                final DataSet newDataSet;
+                if (incremental && dataSet != null && zoom > Config.getInstance().getMaxClusterZoom()
+                        && dataSet.getClusters().isEmpty() && filter.equals(dataSetFilter)) {
+                    // keep the segments within one view size around the view, drop the rest; the segments of the
+                    // view are replaced once the complete result is available
+                    final double height = bbox.getNorth() - bbox.getSouth();
+                    final double width = bbox.getEast() - bbox.getWest();
+                    final BoundingBox retainedArea = new BoundingBox(bbox.getNorth() + height,
+                            bbox.getSouth() - height, bbox.getEast() + width, bbox.getWest() - width);
+                    newDataSet = dataSet.merge(result, retainedArea, partial ? null : bbox);
+                } else {
+                    newDataSet = result;
+                }
+                dataSetFilter = filter;
+                if (partial) {
+                    layer.setPartialDataSet(newDataSet);
+                } else {
+                    layer.setDataSet(newDataSet);
+                }
+                updateSelection(newDataSet);
+                Main.map.repaint();
+            }
+        }
+
+        /*
+         * Displays the data loaded so far, while the search is running. The first loaded batch replaces the displayed
+         * data set, the later ones are appended to it; the batches loaded meanwhile are displayed together, at most
+         * once per UPDATE_INTERVAL.
+         */
+        private class StreamListener implements SearchListener, ActionListener {
+
+            private final BoundingBox bbox;
+            private final SearchFilter filter;
+            private final int zoom;
+            private final Timer timer;
+
+            /* guarded by this */
+            private DataSet loaded = new DataSet();
+            private boolean updatePending;
+
+            /* accessed only from the EDT */
+            private long lastUpdate;
+            private boolean finished;
+            private boolean displayed;
+
+            private StreamListener(final BoundingBox bbox, final SearchFilter filter, final int zoom) {
+                this.bbox = bbox;
+                this.filter = filter;
+                this.zoom = zoom;
+                this.timer = new Timer(UPDATE_INTERVAL, this);
+                this.timer.setRepeats(false);
+            }
+
+            @Override
+            public void dataLoaded(final DataSet dataSet) {
+                final boolean post;
+                synchronized (this) {
+                    loaded.append(dataSet);
+                    post = !updatePending;
+                    updatePending = true;
+                }
+                if (post) {
                     SwingUtilities.invokeLater(new Runnable() {
 
                         @Override
                         public void run() {
-                            new TipDialog().displayDialog(zoom);
-                            layer.setDataSet(result);
-                            updateSelection(result);
-                            Main.map.repaint();
+                            final long delay = lastUpdate + UPDATE_INTERVAL - System.currentTimeMillis();
+                            if (delay > 0) {
+                                timer.setInitialDelay((int) delay);
+                                timer.start();
+                            } else {
+                                update();
+                            }
                         }
                     });
+                }
+            }
+
+            @Override
+            public void actionPerformed(final ActionEvent event) {
+                update();
+            }
+
+            /* stops the partial updates; invoked on the EDT before the final result is displayed */
+            private void finish() {
+                finished = true;
+                timer.stop();
+            }
 
+            private void update() {
+                final DataSet batch;
+                synchronized (this) {
+                    batch = loaded;
+                    loaded = new DataSet();
+                    updatePending = false;
+                }
+                if (!finished && !isSuperseded()) {
+                    lastUpdate = System.currentTimeMillis();
+                    if (!displayed) {
+                        displayed = true;
+                        updateLayer(batch, bbox, filter, zoom, true);
+                    } else if (layer != null) {
+                        layer.appendPartialDataSet(batch);
+                        Main.map.repaint();
+                    }
                 }
             }
         }
@@ -341,7 +547,7 @@ implements LayerChangeListener, ZoomChangeListener, MouseListener, PreferenceCha
                 if (!result.getClusters().isEmpty()) {
                     // clear segment details
                     dialog.updateUI(null, null);
-                } else if (result.getRoadSegments().contains(roadSegment)) {
+                } else if (result.contains(roadSegment)) {
                     dialog.updateUI(roadSegment);
                 } else {
                     dialog.updateUI(null, null);
@@ -0,0 +1,134 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.plugins.directionofflow.util.Util;
+
+
+/**
+ * Executes the search requests on a dedicated thread. Only the latest request is kept: scheduling a new request cancels
+ * the previous one if it did not start yet, and aborts its service connections if it is running. A request that was
+ * superseded while running is counted as dropped; the count is logged at debug level.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+final class SearchScheduler {
+
+    private final ScheduledThreadPoolExecutor executor;
+
+    /* the latest request and its future; guarded by this */
+    private Request current;
+    private ScheduledFuture<?> future;
+
+    /* the number of requests superseded while running; guarded by this */
+    private long droppedCount;
+
+
+    SearchScheduler() {
+        executor = new ScheduledThreadPoolExecutor(1, Util.threadFactory("dof-search"));
+        executor.setRemoveOnCancelPolicy(true);
+    }
+
+
+    /**
+     * Schedules the given request for execution after the given delay, replacing the previous request.
+     *
+     * @param request the {@code Request} to be executed
+     * @param delay the delay in milliseconds
+     */
+    synchronized void schedule(final Request request, final int delay) {
+        cancelCurrent();
+        request.scheduler = this;
+        current = request;
+        future = executor.schedule(new Runnable() {
+
+            @Override
+            public void run() {
+                request.running = true;
+                try {
+                    request.run();
+                } finally {
+                    request.running = false;
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancels the latest request, if it did not complete yet.
+     */
+    synchronized void cancel() {
+        cancelCurrent();
+        current = null;
+        future = null;
+    }
+
+    private void cancelCurrent() {
+        if (current != null && !current.completed) {
+            // interrupt the running request, then close its connections such that blocked reads fail immediately
+            future.cancel(true);
+            ServiceHandler.getInstance().abortSearch();
+            if (current.running) {
+                droppedCount++;
+                Main.debug("Search request dropped (dropped: " + droppedCount + ")");
+            }
+        }
+    }
+
+
+    /**
+     * Defines a search request. The request should check {@link #isSuperseded()} before displaying its result.
+     */
+    abstract static class Request implements Runnable {
+
+        private SearchScheduler scheduler;
+
+        /* true if the final result of the request was displayed; guarded by the scheduler */
+        private boolean completed;
+
+        /* true while the request is executed */
+        private volatile boolean running;
+
+        /**
+         * Checks if a newer request was scheduled. The result of a superseded request should be discarded.
+         *
+         * @return true if the request was superseded, false otherwise
+         */
+        boolean isSuperseded() {
+            synchronized (scheduler) {
+                return scheduler.current != this;
+            }
+        }
+
+        /**
+         * Marks the request as completed, if it was not superseded. Should be called on the thread that displays the
+         * final result, right before displaying it.
+         *
+         * @return true if the result can be displayed, false if it should be discarded
+         */
+        boolean complete() {
+            synchronized (scheduler) {
+                completed = scheduler.current == this;
+                return completed;
+            }
+        }
+    }
+}
\ No newline at end of file
@@ -15,17 +15,23 @@
  */
 package org.openstreetmap.josm.plugins.directionofflow;
 
+import java.io.File;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.JOptionPane;
+import javax.swing.SwingUtilities;
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.plugins.directionofflow.argument.BoundingBox;
 import org.openstreetmap.josm.plugins.directionofflow.argument.SearchFilter;
 import org.openstreetmap.josm.plugins.directionofflow.entity.Comment;
 import org.openstreetmap.josm.plugins.directionofflow.entity.DataSet;
 import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+import org.openstreetmap.josm.plugins.directionofflow.observer.StatusRestoreObserver;
 import org.openstreetmap.josm.plugins.directionofflow.service.DirectionOfFlowService;
 import org.openstreetmap.josm.plugins.directionofflow.service.DirectionOfFlowServiceException;
+import org.openstreetmap.josm.plugins.directionofflow.service.SearchAbortedException;
+import org.openstreetmap.josm.plugins.directionofflow.service.SearchListener;
+import org.openstreetmap.josm.plugins.directionofflow.util.cnf.Config;
 import org.openstreetmap.josm.plugins.directionofflow.util.pref.PreferenceManager;
 
 
@@ -34,11 +40,34 @@ import org.openstreetmap.josm.plugins.directionofflow.util.pref.PreferenceManage
  * displayed to the user.
  *
  * @author Beata
- * @version $Revision: 11 $
+ * @version $Revision: 12 $
  */
 public class ServiceHandler {
 
+    /* the comment log is kept with the preferences, since the cache directory may be cleared */
+    private static final String COMMENT_LOG = "directionofflow" + File.separator + "comments.log";
+
     private final DirectionOfFlowService service = new DirectionOfFlowService();
+    private final CommentOutbox commentOutbox = new CommentOutbox(service,
+            new File(Main.pref.getPreferencesDirectory(), COMMENT_LOG),
+            Config.getInstance().getCommentBatchSize(), Config.getInstance().getCommentBatchDelay(),
+            Config.getInstance().getCommentRetryDelay(), Config.getInstance().getCommentRetryMaxDelay()) {
+
+        @Override
+        void handleFailure(final DirectionOfFlowServiceException e) {
+            handleException(e, false);
+        }
+
+        @Override
+        void statusRestored(final List<RoadSegment> roadSegments) {
+            if (statusRestoreObserver != null) {
+                statusRestoreObserver.statusRestored(roadSegments);
+            }
+        }
+    };
+
+    /* accessed only from the EDT */
+    private StatusRestoreObserver statusRestoreObserver;
 
     private static final ServiceHandler INSTANCE = new ServiceHandler();
 
@@ -55,15 +84,51 @@ public class ServiceHandler {
      * @return
      */
     public DataSet search(final BoundingBox bbox, final SearchFilter filter, final int zoom) {
+        return search(bbox, filter, zoom, null);
+    }
+
+    /**
+     * Searches for data in the given area. The given listener receives the data tile by tile, as it is loaded.
+     *
+     * @param bbox a {@code BoundingBox} defines the searching area
+     * @param filter a {@code SearchFilter} defines the filters to be applied
+     * @param zoom the current zoom level
+     * @param listener a {@code SearchListener} to be notified about the loaded tiles, may be null
+     * @return a {@code DataSet}
+     */
+    public DataSet search(final BoundingBox bbox, final SearchFilter filter, final int zoom,
+            final SearchListener listener) {
         DataSet result = new DataSet();
         try {
-            result = service.search(bbox, filter, zoom);
+            result = service.search(bbox, filter, zoom, listener);
+        } catch (final SearchAbortedException e) {
+            // the result is no longer needed, nothing to display
         } catch (final DirectionOfFlowServiceException e) {
             handleException(e, true);
         }
         return result;
     }
 
+    /**
+     * Returns the locally cached data of the given area. No message is displayed, since the operation does not contact
+     * the service.
+     *
+     * @param bbox a {@code BoundingBox} defines the searching area
+     * @param filter a {@code SearchFilter} defines the filters to be applied
+     * @param zoom the current zoom level
+     * @return a {@code DataSet}
+     */
+    public DataSet searchLocal(final BoundingBox bbox, final SearchFilter filter, final int zoom) {
+        return service.searchLocal(bbox, filter, zoom);
+    }
+
+    /**
+     * Aborts the running search operations. The aborted searches return an empty result without displaying a message.
+     */
+    public void abortSearch() {
+        service.abortSearch();
+    }
+
     /**
      *
      * @param wayId
@@ -83,27 +148,54 @@ public class ServiceHandler {
     }
 
     /**
+     * Queues the given comment for the given road segments. The comment is written to a local log and sent to the
+     * service later, together with other queued comments; if the service cannot be reached, sending is retried, also
+     * after a restart. If the comment has a status, the status of the road segments is changed immediately and the
+     * cached search results are dropped; if the service rejects the comment, the previous status is restored and a
+     * message is displayed.
      *
-     * @param comment
-     * @param roadSegments
+     * @param comment the {@code Comment} to be added
+     * @param roadSegments the list of commented {@code RoadSegment}s
      */
     public void comment(final Comment comment, final List<RoadSegment> roadSegments) {
-        try {
-            service.comment(comment, roadSegments);
-        } catch (final DirectionOfFlowServiceException e) {
-            handleException(e, false);
-        }
+        commentOutbox.add(comment, roadSegments);
+        service.commentQueued(comment, roadSegments);
+    }
+
+    /**
+     * Registers the observer notified when the status of road segments is restored, since the service rejected a
+     * comment. Should be called from the EDT.
+     *
+     * @param observer a {@code StatusRestoreObserver}, or null for removing the registered observer
+     */
+    public void registerStatusRestoreObserver(final StatusRestoreObserver observer) {
+        this.statusRestoreObserver = observer;
     }
 
+    /**
+     * Sends the queued comments to the service without waiting for the batch delay.
+     */
+    public void flushComments() {
+        commentOutbox.flush();
+    }
+
+    /* the operations run on background threads, the message is displayed on the EDT */
     private void handleException(final Exception e, final boolean suppress) {
-        if (suppress) {
-            if (!PreferenceManager.getInstance().loadErrorSuppressFlag()) {
-                PreferenceManager.getInstance().saveErrorSuppressFlag(suppress);
-                JOptionPane.showMessageDialog(Main.parent, e.getMessage(), "Operation failed",
-                        JOptionPane.ERROR_MESSAGE);
+        SwingUtilities.invokeLater(new Runnable() {
+
+            @Override
+            public void run() {
+                if (suppress) {
+                    if (!PreferenceManager.getInstance().loadErrorSuppressFlag()) {
+                        PreferenceManager.getInstance().saveErrorSuppressFlag(suppress);
+                        JOptionPane.showMessageDialog(Main.parent, e.getMessage(), "Operation failed",
+                                JOptionPane.ERROR_MESSAGE);
+                    }
+                } else {
+                    JOptionPane.showMessageDialog(Main.parent, e.getMessage(), "Operation failed",
+                            JOptionPane.ERROR_MESSAGE);
+                }
             }
-        } else {
-            JOptionPane.showMessageDialog(Main.parent, e.getMessage(), "Operation failed", JOptionPane.ERROR_MESSAGE);
-        }
+        });
     }
 }
\ No newline at end of file
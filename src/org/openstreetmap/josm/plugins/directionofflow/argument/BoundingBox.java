@@ -55,6 +55,22 @@ public class BoundingBox {
         this.west = bounds.getMin().lon() < MIN_LON ? MIN_LON : bounds.getMin().lon();
     }
 
+    /**
+     * Builds a new bounding box with the given limits. The limits are truncated to the valid latitude/longitude
+     * intervals.
+     *
+     * @param north the northern limit
+     * @param south the southern limit
+     * @param east the eastern limit
+     * @param west the western limit
+     */
+    public BoundingBox(final double north, final double south, final double east, final double west) {
+        this.north = north > MAX_LAT ? MAX_LAT : north;
+        this.south = south < MIN_LAT ? MIN_LAT : south;
+        this.east = east > MAX_LON ? MAX_LON : east;
+        this.west = west < MIN_LON ? MIN_LON : west;
+    }
+
 
     @Override
     public int hashCode() {
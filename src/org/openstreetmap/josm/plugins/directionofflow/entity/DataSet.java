@@ -18,10 +18,12 @@ package org.openstreetmap.josm.plugins.directionofflow.entity;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import org.openstreetmap.josm.plugins.directionofflow.argument.BoundingBox;
 
 
 /**
- * Represent's the data set of the 'DirectionOfFlowLayer'.
+ * Represent's the data set of the 'DirectionOfFlowLayer'. The road segments can be looked up by identity in constant
+ * time; the identity index is built at the first lookup.
  *
  * @author Beata
  * @version $Revision: 6 $
@@ -31,6 +33,9 @@ public class DataSet {
     private final List<Cluster> clusters;
     private final List<RoadSegment> roadSegments;
 
+    /* indexes the road segments by identity; built by the first operation that needs it */
+    private volatile RoadSegmentMap roadSegmentMap;
+
     /**
      * Builds an empty data set.
      */
@@ -54,6 +59,127 @@ public class DataSet {
     }
 
 
+    /**
+     * Appends the clusters and road segments of the given data set to this data set. Road segments already contained
+     * by this data set are skipped.
+     *
+     * @param dataSet a {@code DataSet}
+     */
+    public void append(final DataSet dataSet) {
+        if (!dataSet.getClusters().isEmpty()) {
+            clusters.addAll(dataSet.getClusters());
+            Collections.sort(clusters);
+        }
+        final RoadSegmentMap map = roadSegmentMap();
+        for (final RoadSegment roadSegment : dataSet.getRoadSegments()) {
+            if (map.putIfAbsent(roadSegment)) {
+                roadSegments.add(roadSegment);
+            }
+        }
+    }
+
+    /**
+     * Merges the road segments of the given data set into this data set and returns the result. Segments present in
+     * both data sets are taken from the given data set, since it is the more recent one. A segment of this data set is
+     * kept only if it intersects the retained area and does not intersect the searched area: the given data set
+     * contains every segment of the searched area, therefore a segment missing from it is no longer valid. The
+     * clusters are taken from the given data set only, since they depend on the zoom level.
+     *
+     * @param dataSet the more recent {@code DataSet}
+     * @param retainedArea the {@code BoundingBox} outside which the segments of this data set are dropped
+     * @param searchedArea the {@code BoundingBox} searched for the given data set, or null if the given data set is
+     * not the complete result of the area, in which case the segments of this data set are not replaced
+     * @return a new {@code DataSet}
+     */
+    public DataSet merge(final DataSet dataSet, final BoundingBox retainedArea, final BoundingBox searchedArea) {
+        final DataSet result = new DataSet(new ArrayList<>(dataSet.getClusters()), new ArrayList<RoadSegment>());
+        final RoadSegmentMap map = result.roadSegmentMap();
+        for (final RoadSegment segment : dataSet.getRoadSegments()) {
+            if (map.putIfAbsent(segment)) {
+                result.roadSegments.add(segment);
+            }
+        }
+        for (final RoadSegment segment : roadSegments) {
+            if (intersects(segment, retainedArea) && (searchedArea == null || !intersects(segment, searchedArea))
+                    && map.putIfAbsent(segment)) {
+                // a segment already contained is not replaced
+                result.roadSegments.add(segment);
+            }
+        }
+        return result;
+    }
+
+    private static boolean intersects(final RoadSegment segment, final BoundingBox area) {
+        return segment.getMaxLat() >= RoadSegment.toFixedPoint(area.getSouth())
+                && segment.getMinLat() <= RoadSegment.toFixedPoint(area.getNorth())
+                && segment.getMaxLon() >= RoadSegment.toFixedPoint(area.getWest())
+                && segment.getMinLon() <= RoadSegment.toFixedPoint(area.getEast());
+    }
+
+    /**
+     * Builds a data set containing the clusters and road segments of the given data sets. A road segment contained by
+     * several data sets is added only once.
+     *
+     * @param dataSets a list of {@code DataSet}s
+     * @return a new {@code DataSet}
+     */
+    public static DataSet union(final List<DataSet> dataSets) {
+        final List<Cluster> clusters = new ArrayList<>();
+        for (final DataSet dataSet : dataSets) {
+            clusters.addAll(dataSet.getClusters());
+        }
+        final DataSet result = new DataSet(clusters, new ArrayList<RoadSegment>());
+        for (final DataSet dataSet : dataSets) {
+            for (final RoadSegment roadSegment : dataSet.getRoadSegments()) {
+                if (result.roadSegmentMap().putIfAbsent(roadSegment)) {
+                    result.roadSegments.add(roadSegment);
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the road segment with the given identity.
+     *
+     * @param wayId the identifier of the OSM way which contains the segment
+     * @param fromNodeId the identifier of the OSM node which marks the start of the segment
+     * @param toNodeId the identifier of the OSM node which marks the end of the segment
+     * @return a {@code RoadSegment}, or null if the data set does not contain such a segment
+     */
+    public RoadSegment getRoadSegment(final long wayId, final long fromNodeId, final long toNodeId) {
+        return roadSegmentMap().get(wayId, fromNodeId, toNodeId);
+    }
+
+    /**
+     * Returns the road segment of this data set that is equal to the given one.
+     *
+     * @param roadSegment a {@code RoadSegment}
+     * @return a {@code RoadSegment}, or null if the data set does not contain such a segment
+     */
+    public RoadSegment getRoadSegment(final RoadSegment roadSegment) {
+        return getRoadSegment(roadSegment.getWayId(), roadSegment.getFromNodeId(), roadSegment.getToNodeId());
+    }
+
+    /**
+     * Checks if the data set contains a road segment equal to the given one.
+     *
+     * @param roadSegment a {@code RoadSegment}, can be null
+     * @return true if the data set contains the segment, false otherwise
+     */
+    public boolean contains(final RoadSegment roadSegment) {
+        return roadSegment != null && getRoadSegment(roadSegment) != null;
+    }
+
+    private RoadSegmentMap roadSegmentMap() {
+        RoadSegmentMap map = roadSegmentMap;
+        if (map == null) {
+            map = new RoadSegmentMap(roadSegments);
+            roadSegmentMap = map;
+        }
+        return map;
+    }
+
     public List<Cluster> getClusters() {
         return clusters;
     }
@@ -15,28 +15,52 @@
  */
 package org.openstreetmap.josm.plugins.directionofflow.entity;
 
+import java.util.ArrayList;
 import java.util.List;
 import org.openstreetmap.josm.data.coor.LatLon;
 
 
 /**
- * Defines the attributes of a road segment.
+ * Defines the attributes of a road segment. The attributes are stored in primitive form: the geometry is kept as a
+ * packed array of fixed-point coordinates (degrees multiplied by {@link #COORDINATE_FACTOR}), in
+ * (latitude, longitude) order; missing trip values are marked by sentinel values. The attributes are not changed
+ * after the segment was built, except the status: it is updated on the EDT when a comment changing the status is
+ * queued, and restored if the service rejects the comment.
  *
  * @author Beata
  * @version $Revision: 11 $
  */
 public class RoadSegment {
 
-    private final Long wayId;
-    private final Long fromNodeId;
-    private final Long toNodeId;
-    private Integer numberOfTrips;
-    private Double percentOfTrips;
+    /** the factor used for storing the coordinates in fixed-point format */
+    public static final double COORDINATE_FACTOR = 1E7;
+
+    private static final int NO_TRIPS = -1;
+    private static final int[] NO_COORDINATES = new int[0];
+    private static final float[] NO_SIGNIFICANCE = new float[0];
+
+    private final long wayId;
+    private final long fromNodeId;
+    private final long toNodeId;
+    private int numberOfTrips = NO_TRIPS;
+    private double percentOfTrips = Double.NaN;
     private ConfidenceLevel confidenceLevel;
-    private List<LatLon> points;
+    private int[] coordinates = NO_COORDINATES;
     private Status status;
     private RoadType type;
 
+    /* bounding box of the geometry, in fixed-point format */
+    private int minLat;
+    private int minLon;
+    private int maxLat;
+    private int maxLon;
+
+    /*
+     * the Douglas-Peucker significance of the points, in fixed-point latitude units: a point belongs to the simplified
+     * geometry of a tolerance if its significance exceeds the tolerance. Empty if the segment has no interior points.
+     */
+    private float[] significance = NO_SIGNIFICANCE;
+
 
     /**
      * Builds a new road segment with the given arguments.
@@ -45,10 +69,11 @@ public class RoadSegment {
      * @param fromNodeId the identifier of the OSM node which marks the start of this road segment
      * @param toNodeId the identifier of the OSM node which marks the end of this road segment
      */
-    public RoadSegment(final Long wayId, final Long fromNodeId, final Long toNodeId) {
+    public RoadSegment(final long wayId, final long fromNodeId, final long toNodeId) {
         this.wayId = wayId;
         this.fromNodeId = fromNodeId;
         this.toNodeId = toNodeId;
+        computeBounds();
     }
 
     /**
@@ -57,57 +82,279 @@ public class RoadSegment {
      * @param wayId the identifier of the OSM way which contains this segment
      * @param fromNodeId the identifier of the OSM node which marks the start of this road segment
      * @param toNodeId the identifier of the OSM node which marks the end of this road segment
-     * @param numberOfTrips the number of trips that passed through the road segment
+     * @param numberOfTrips the number of trips that passed through the road segment, can be null
+     * @param percentOfTrips the percentage of trips that passed in the one way direction, can be null
      * @param confidenceLevel the measure of confidence with which this road segment is marked as one way
-     * @param points the geometry of the segment, ordered in the direction of the one way restriction
+     * @param coordinates the geometry of the segment, ordered in the direction of the one way restriction, as
+     * fixed-point (latitude, longitude) pairs; the array is not copied
      * @param status the status of the road segment
      * @param type the type of the OSM way which contains this road segment
      */
-    public RoadSegment(final Long wayId, final Long fromNodeId, final Long toNodeId, final Integer numberOfTrips,
-            final Double percentOfTrips, final ConfidenceLevel confidenceLevel, final List<LatLon> points,
+    public RoadSegment(final long wayId, final long fromNodeId, final long toNodeId, final Integer numberOfTrips,
+            final Double percentOfTrips, final ConfidenceLevel confidenceLevel, final int[] coordinates,
             final Status status, final RoadType type) {
         this(wayId, fromNodeId, toNodeId);
-        this.numberOfTrips = numberOfTrips;
-        this.percentOfTrips = percentOfTrips;
+        this.numberOfTrips = numberOfTrips != null ? numberOfTrips : NO_TRIPS;
+        this.percentOfTrips = percentOfTrips != null ? percentOfTrips : Double.NaN;
         this.confidenceLevel = confidenceLevel;
-        this.points = points;
+        this.coordinates = coordinates != null ? coordinates : NO_COORDINATES;
         this.status = status;
         this.type = type;
+        computeBounds();
+        computeSignificance();
+    }
+
+    private void computeBounds() {
+        minLat = Integer.MAX_VALUE;
+        minLon = Integer.MAX_VALUE;
+        maxLat = Integer.MIN_VALUE;
+        maxLon = Integer.MIN_VALUE;
+        for (int i = 0; i < coordinates.length; i += 2) {
+            minLat = Math.min(minLat, coordinates[i]);
+            maxLat = Math.max(maxLat, coordinates[i]);
+            minLon = Math.min(minLon, coordinates[i + 1]);
+            maxLon = Math.max(maxLon, coordinates[i + 1]);
+        }
     }
 
+    /*
+     * Runs the Douglas-Peucker algorithm down to a zero tolerance and records for every interior point the distance at
+     * which it was kept. A point's significance is limited to the significance of the point that split its range, such
+     * that the simplified geometry of a larger tolerance is always contained in the one of a smaller tolerance.
+     */
+    private void computeSignificance() {
+        final int count = getPointCount();
+        if (count > 2) {
+            significance = new float[count];
+            // the longitude units are scaled to latitude units, since the segments are short
+            final double lonFactor = Math.cos(Math.toRadians(getLat(0)));
+            final int[] firsts = new int[count];
+            final int[] lasts = new int[count];
+            final float[] limits = new float[count];
+            int top = 0;
+            firsts[top] = 0;
+            lasts[top] = count - 1;
+            limits[top++] = Float.MAX_VALUE;
+            while (top > 0) {
+                top--;
+                final int first = firsts[top];
+                final int last = lasts[top];
+                if (last - first > 1) {
+                    int split = first + 1;
+                    double maxDistance = -1;
+                    for (int i = first + 1; i < last; i++) {
+                        final double distance = distance(i, first, last, lonFactor);
+                        if (distance > maxDistance) {
+                            maxDistance = distance;
+                            split = i;
+                        }
+                    }
+                    final float value = Math.min((float) maxDistance, limits[top]);
+                    significance[split] = value;
+                    firsts[top] = first;
+                    lasts[top] = split;
+                    limits[top++] = value;
+                    firsts[top] = split;
+                    lasts[top] = last;
+                    limits[top++] = value;
+                }
+            }
+        }
+    }
 
-    public Long getWayId() {
+    /* the distance between the point and the segment (first, last) */
+    private double distance(final int point, final int first, final int last, final double lonFactor) {
+        final double x = getFixedLon(point) * lonFactor;
+        final double y = getFixedLat(point);
+        final double x1 = getFixedLon(first) * lonFactor;
+        final double y1 = getFixedLat(first);
+        final double dx = getFixedLon(last) * lonFactor - x1;
+        final double dy = getFixedLat(last) - y1;
+        final double length = dx * dx + dy * dy;
+        double t = length > 0 ? ((x - x1) * dx + (y - y1) * dy) / length : 0;
+        t = Math.max(0, Math.min(1, t));
+        return Math.hypot(x - (x1 + t * dx), y - (y1 + t * dy));
+    }
+
+    /**
+     * Converts the given coordinate value to fixed-point format.
+     *
+     * @param value a latitude or longitude value, in degrees
+     * @return the fixed-point value
+     */
+    public static int toFixedPoint(final double value) {
+        return (int) Math.round(value * COORDINATE_FACTOR);
+    }
+
+    public long getWayId() {
         return wayId;
     }
 
-    public Long getFromNodeId() {
+    public long getFromNodeId() {
         return fromNodeId;
     }
 
-    public Long getToNodeId() {
+    public long getToNodeId() {
         return toNodeId;
     }
 
+    /**
+     * Returns the number of trips, or null if the number is unknown.
+     *
+     * @return an {@code Integer}
+     */
     public Integer getNumberOfTrips() {
-        return numberOfTrips;
+        return numberOfTrips != NO_TRIPS ? numberOfTrips : null;
     }
 
+    /**
+     * Returns the percentage of trips in the one way direction, or null if the percentage is unknown.
+     *
+     * @return a {@code Double}
+     */
     public Double getPercentOfTrips() {
-        return percentOfTrips;
+        return Double.isNaN(percentOfTrips) ? null : percentOfTrips;
     }
 
     public ConfidenceLevel getConfidenceLevel() {
         return confidenceLevel;
     }
 
+    /**
+     * Returns the number of points of the segment's geometry.
+     *
+     * @return an integer
+     */
+    public int getPointCount() {
+        return coordinates.length / 2;
+    }
+
+    /**
+     * Returns the latitude of the point with the given index.
+     *
+     * @param index the index of the point
+     * @return the latitude, in degrees
+     */
+    public double getLat(final int index) {
+        return coordinates[2 * index] / COORDINATE_FACTOR;
+    }
+
+    /**
+     * Returns the longitude of the point with the given index.
+     *
+     * @param index the index of the point
+     * @return the longitude, in degrees
+     */
+    public double getLon(final int index) {
+        return coordinates[2 * index + 1] / COORDINATE_FACTOR;
+    }
+
+    /**
+     * Checks if the point with the given index belongs to the geometry simplified with the given tolerance. The first
+     * and the last point always belong to the simplified geometry.
+     *
+     * @param index the index of the point
+     * @param tolerance the maximum distance between the original and the simplified geometry, in degrees
+     * @return true if the point should be drawn, false otherwise
+     */
+    public boolean isSignificant(final int index, final double tolerance) {
+        return index == 0 || index == getPointCount() - 1 || significance[index] > tolerance * COORDINATE_FACTOR;
+    }
+
+    /**
+     * Returns the fixed-point latitude of the point with the given index.
+     *
+     * @param index the index of the point
+     * @return the latitude, in fixed-point format
+     */
+    public int getFixedLat(final int index) {
+        return coordinates[2 * index];
+    }
+
+    /**
+     * Returns the fixed-point longitude of the point with the given index.
+     *
+     * @param index the index of the point
+     * @return the longitude, in fixed-point format
+     */
+    public int getFixedLon(final int index) {
+        return coordinates[2 * index + 1];
+    }
+
+    /**
+     * Returns the point with the given index. A new object is built on every call; paint and search loops should use
+     * {@link #getLat(int)} and {@link #getLon(int)} instead.
+     *
+     * @param index the index of the point
+     * @return a {@code LatLon}
+     */
+    public LatLon getPoint(final int index) {
+        return new LatLon(getLat(index), getLon(index));
+    }
+
+    /**
+     * Returns the geometry of the segment as a newly built list of points.
+     *
+     * @return a list of {@code LatLon}s
+     */
     public List<LatLon> getPoints() {
+        final List<LatLon> points = new ArrayList<>(getPointCount());
+        for (int i = 0; i < getPointCount(); i++) {
+            points.add(getPoint(i));
+        }
         return points;
     }
 
+    /**
+     * Returns the minimum latitude of the segment's geometry, in fixed-point format. The bounding box of a segment
+     * without geometry is empty, having the minimum values greater than the maximum values.
+     *
+     * @return an integer
+     */
+    public int getMinLat() {
+        return minLat;
+    }
+
+    /**
+     * Returns the minimum longitude of the segment's geometry, in fixed-point format.
+     *
+     * @return an integer
+     */
+    public int getMinLon() {
+        return minLon;
+    }
+
+    /**
+     * Returns the maximum latitude of the segment's geometry, in fixed-point format.
+     *
+     * @return an integer
+     */
+    public int getMaxLat() {
+        return maxLat;
+    }
+
+    /**
+     * Returns the maximum longitude of the segment's geometry, in fixed-point format.
+     *
+     * @return an integer
+     */
+    public int getMaxLon() {
+        return maxLon;
+    }
+
     public Status getStatus() {
         return status;
     }
 
+    /**
+     * Sets the status of the road segment. Used for displaying a status change before the service confirms it.
+     *
+     * @param status the new {@code Status}
+     */
+    public void setStatus(final Status status) {
+        this.status = status;
+    }
+
     public RoadType getType() {
         return type;
     }
@@ -115,10 +362,11 @@ public class RoadSegment {
     @Override
     public int hashCode() {
         final int prime = 31;
+        final int bit = 32;
         int result = 1;
-        result = prime * result + ((wayId == null) ? 0 : wayId.hashCode());
-        result = prime * result + ((fromNodeId == null) ? 0 : fromNodeId.hashCode());
-        result = prime * result + ((toNodeId == null) ? 0 : toNodeId.hashCode());
+        result = prime * result + (int) (wayId ^ (wayId >>> bit));
+        result = prime * result + (int) (fromNodeId ^ (fromNodeId >>> bit));
+        result = prime * result + (int) (toNodeId ^ (toNodeId >>> bit));
         return result;
     }
 
@@ -129,11 +377,8 @@ public class RoadSegment {
             result = true;
         } else if (obj instanceof RoadSegment) {
             final RoadSegment other = (RoadSegment) obj;
-            result = (wayId == null && other.getWayId() == null) || (wayId != null && wayId.equals(other.getWayId()));
-            result = result && ((fromNodeId == null && other.getFromNodeId() == null)
-                    || (fromNodeId != null && fromNodeId.equals(other.getFromNodeId())));
-            result = result && ((toNodeId == null && other.getToNodeId() == null)
-                    || (toNodeId != null && toNodeId.equals(other.getToNodeId())));
+            result = wayId == other.getWayId() && fromNodeId == other.getFromNodeId()
+                    && toNodeId == other.getToNodeId();
         }
         return result;
     }
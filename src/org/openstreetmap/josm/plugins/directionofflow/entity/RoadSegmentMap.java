@@ -0,0 +1,147 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.entity;
+
+import java.util.Collection;
+
+
+/**
+ * Maps the identity of road segments to road segments. The map uses open addressing with linear probing over
+ * primitive key arrays, such that a lookup does not box the identifiers or dereference the stored segments.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+final class RoadSegmentMap {
+
+    private static final int MIN_CAPACITY = 8;
+
+    private long[] wayIds;
+    private long[] fromNodeIds;
+    private long[] toNodeIds;
+    private RoadSegment[] values;
+    private int mask;
+    private int size;
+
+
+    /**
+     * Builds a map containing the given road segments. If several segments have the same identity, the first one is
+     * kept.
+     *
+     * @param roadSegments a collection of {@code RoadSegment}s
+     */
+    RoadSegmentMap(final Collection<RoadSegment> roadSegments) {
+        allocate(capacity(roadSegments.size()));
+        for (final RoadSegment roadSegment : roadSegments) {
+            putIfAbsent(roadSegment);
+        }
+    }
+
+
+    /**
+     * Returns the road segment with the given identity.
+     *
+     * @param wayId the identifier of the OSM way which contains the segment
+     * @param fromNodeId the identifier of the OSM node which marks the start of the segment
+     * @param toNodeId the identifier of the OSM node which marks the end of the segment
+     * @return a {@code RoadSegment}, or null if the map does not contain such a segment
+     */
+    RoadSegment get(final long wayId, final long fromNodeId, final long toNodeId) {
+        int idx = index(wayId, fromNodeId, toNodeId);
+        RoadSegment result = null;
+        while (values[idx] != null) {
+            if (wayIds[idx] == wayId && fromNodeIds[idx] == fromNodeId && toNodeIds[idx] == toNodeId) {
+                result = values[idx];
+                break;
+            }
+            idx = (idx + 1) & mask;
+        }
+        return result;
+    }
+
+    /**
+     * Adds the given road segment, if the map does not contain a segment with the same identity.
+     *
+     * @param roadSegment a {@code RoadSegment}
+     * @return true if the segment was added, false otherwise
+     */
+    boolean putIfAbsent(final RoadSegment roadSegment) {
+        final long wayId = roadSegment.getWayId();
+        final long fromNodeId = roadSegment.getFromNodeId();
+        final long toNodeId = roadSegment.getToNodeId();
+        int idx = index(wayId, fromNodeId, toNodeId);
+        boolean added = true;
+        while (values[idx] != null) {
+            if (wayIds[idx] == wayId && fromNodeIds[idx] == fromNodeId && toNodeIds[idx] == toNodeId) {
+                added = false;
+                break;
+            }
+            idx = (idx + 1) & mask;
+        }
+        if (added) {
+            wayIds[idx] = wayId;
+            fromNodeIds[idx] = fromNodeId;
+            toNodeIds[idx] = toNodeId;
+            values[idx] = roadSegment;
+            size++;
+            if (2 * size > values.length) {
+                rehash();
+            }
+        }
+        return added;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void rehash() {
+        final RoadSegment[] oldValues = values;
+        allocate(2 * oldValues.length);
+        size = 0;
+        for (final RoadSegment roadSegment : oldValues) {
+            if (roadSegment != null) {
+                putIfAbsent(roadSegment);
+            }
+        }
+    }
+
+    private void allocate(final int capacity) {
+        wayIds = new long[capacity];
+        fromNodeIds = new long[capacity];
+        toNodeIds = new long[capacity];
+        values = new RoadSegment[capacity];
+        mask = capacity - 1;
+    }
+
+    /* the smallest power of two that keeps the load factor at most 0.5 */
+    private static int capacity(final int count) {
+        int capacity = MIN_CAPACITY;
+        while (capacity < 2 * count) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private int index(final long wayId, final long fromNodeId, final long toNodeId) {
+        long hash = wayId * 0x9E3779B97F4A7C15L;
+        hash ^= fromNodeId * 0xC2B2AE3D27D4EB4FL;
+        hash ^= toNodeId * 0x165667B19E3779F9L;
+        hash ^= hash >>> 32;
+        hash ^= hash >>> 16;
+        return (int) hash & mask;
+    }
+}
\ No newline at end of file
@@ -158,8 +158,8 @@ class ButtonPanel extends JPanel {
             if (event.getSource() instanceof JButton) {
                 LatLon latLon = null;
                 if (roadSegment != null) {
-                    final int idx = Math.round(roadSegment.getPoints().size() / 2);
-                    latLon = roadSegment.getPoints().get(idx);
+                    final int idx = Math.round(roadSegment.getPointCount() / 2);
+                    latLon = roadSegment.getPoint(idx);
                 } else {
                     latLon = Main.map.mapView.getRealBounds().getCenter();
                 }
@@ -24,9 +24,10 @@ import org.openstreetmap.josm.plugins.directionofflow.gui.GuiBuilder;
 
 
 /**
+ * Displays the comments of the selected road segment.
  *
  * @author Beata
- * @version $Revision: 36 $
+ * @version $Revision: 37 $
  */
 class CommentsPanel extends BasicPanel<List<Comment>> {
 
@@ -39,13 +40,23 @@ class CommentsPanel extends BasicPanel<List<Comment>> {
 
     @Override
     void createComponents(final List<Comment> comments) {
+        addText(Formatter.formatComments(comments));
+    }
+
+    /**
+     * Displays a loading message instead of the comments, while the comments are retrieved.
+     */
+    void showLoading() {
+        removeAll();
+        addText(Formatter.formatCommentsMessage(getGuiCnf().getPnlHistoryLoadingTxt()));
+    }
+
+    private void addText(final String txt) {
         setLayout(new BorderLayout());
-        final String txt = Formatter.formatComments(comments);
         final JTextPane txtPane = GuiBuilder.buildTextPane(txt, null);
         final JScrollPane cmp =
                 GuiBuilder.buildScrollPane(getGuiCnf().getPnlHistoryTitle(), txtPane, getBackground(), null);
         add(cmp, BorderLayout.CENTER);
-
     }
 
 }
\ No newline at end of file
@@ -35,7 +35,7 @@ import org.openstreetmap.josm.tools.Shortcut;
  * Defines the right side dialog window.
  *
  * @author Beata
- * @version $Revision: 51 $
+ * @version $Revision: 52 $
  */
 public class DirectionOfFlowDetailsDialog extends ToggleDialog {
 
@@ -94,6 +94,20 @@ public class DirectionOfFlowDetailsDialog extends ToggleDialog {
         }
     }
 
+    /**
+     * Updates the UI with the given road segment, and displays a loading message while its comments are retrieved.
+     *
+     * @param roadSegment a {@code RoadSegment}
+     */
+    public void updateUILoading(final RoadSegment roadSegment) {
+        synchronized (this) {
+            pnlInfo.updateData(roadSegment);
+            pnlComments.showLoading();
+            pnlBtn.setRoadSegment(roadSegment);
+            repaint();
+        }
+    }
+
     /**
      * Updates the UI with the given road segment and comment list.
      *
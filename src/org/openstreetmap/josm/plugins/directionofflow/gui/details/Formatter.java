@@ -86,6 +86,16 @@ final class Formatter {
         return sb.toString();
     }
 
+    /**
+     * Formats the given message in the style of the comment list.
+     *
+     * @param message a text
+     * @return an HTML string
+     */
+    static String formatCommentsMessage(final String message) {
+        return "<html><body><font size='3' face='times new roman'><i>" + message + "</i></font></body></html>";
+    }
+
     private static String formatTimestamp(final Long timestamp) {
         final SimpleDateFormat dateTimeFormat = new SimpleDateFormat(TSTP);
         dateTimeFormat.setTimeZone(TimeZone.getDefault());
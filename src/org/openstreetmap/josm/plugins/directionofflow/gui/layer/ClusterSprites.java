@@ -0,0 +1,89 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.gui.layer;
+
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.CLUSTER_COMPOSITE;
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.NORMAL_COLOR;
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.RENDERING_MAP;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.Transparency;
+import java.awt.geom.Ellipse2D;
+import java.awt.image.BufferedImage;
+import java.util.HashMap;
+import java.util.Map;
+
+
+/**
+ * Caches the images of the cluster circles. The clusters have only a few distinct radiuses (one for each radius bucket
+ * of the cluster configuration), therefore every circle is rendered once, with antialiasing and the translucent cluster
+ * composite, and afterwards only the image is copied for each cluster.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+final class ClusterSprites {
+
+    /* the space around a circle in its image, for the antialiased outline */
+    static final int MARGIN = 1;
+
+    private final Map<Double, BufferedImage> sprites = new HashMap<>();
+    private GraphicsConfiguration configuration;
+
+
+    /**
+     * Returns the image of a circle with the given radius. The circle is {@code radius} wide and its bounding box
+     * starts at ({@link #MARGIN}, {@link #MARGIN}) in the image. The image is compatible with the given graphics, such
+     * that it can be copied fast.
+     *
+     * @param graphics the {@code Graphics2D} the image is drawn to
+     * @param radius the radius of the cluster
+     * @return a translucent image, already composited with the cluster composite
+     */
+    BufferedImage get(final Graphics2D graphics, final double radius) {
+        final GraphicsConfiguration currentConfiguration = graphics.getDeviceConfiguration();
+        if (currentConfiguration != configuration) {
+            // the images of another device may be slow to draw
+            sprites.clear();
+            configuration = currentConfiguration;
+        }
+        BufferedImage sprite = sprites.get(radius);
+        if (sprite == null) {
+            sprite = render(radius);
+            sprites.put(radius, sprite);
+        }
+        return sprite;
+    }
+
+    private BufferedImage render(final double radius) {
+        final int size = (int) Math.ceil(radius) + 2 * MARGIN + 1;
+        final BufferedImage sprite = configuration != null
+                ? configuration.createCompatibleImage(size, size, Transparency.TRANSLUCENT)
+                : new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB_PRE);
+        final Graphics2D graphics = sprite.createGraphics();
+        try {
+            graphics.setRenderingHints(RENDERING_MAP);
+            graphics.setComposite(CLUSTER_COMPOSITE);
+            graphics.setColor(NORMAL_COLOR);
+            final Ellipse2D.Double circle = new Ellipse2D.Double(MARGIN, MARGIN, radius, radius);
+            graphics.fill(circle);
+            graphics.draw(circle);
+        } finally {
+            graphics.dispose();
+        }
+        return sprite;
+    }
+}
\ No newline at end of file
@@ -47,11 +47,17 @@ final class Constants {
     static final Stroke SEGMENT_STROKE = new BasicStroke(5F, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
     static final Stroke SELECTED_SEGMENT_STROKE = new BasicStroke(10F, BasicStroke.CAP_ROUND, BasicStroke.JOIN_ROUND);
 
+    /* thinner strokes with cheaper caps and joins, used while the map is moving */
+    static final Stroke FAST_SEGMENT_STROKE = new BasicStroke(3F, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
+    static final Stroke FAST_SELECTED_SEGMENT_STROKE =
+            new BasicStroke(6F, BasicStroke.CAP_BUTT, BasicStroke.JOIN_BEVEL);
+
     static final double PHI = Math.toRadians(40);
     static final double ARROW_LENGTH = 10;
     static final double SEL_ARROW_LENGTH = 17;
 
     public static final Map<RenderingHints.Key, Object> RENDERING_MAP = createRenderingMap();
+    public static final Map<RenderingHints.Key, Object> FAST_RENDERING_MAP = createFastRenderingMap();
 
     private static Map<RenderingHints.Key, Object> createRenderingMap() {
         final Map<RenderingHints.Key, Object> map = new HashMap<RenderingHints.Key, Object>();
@@ -60,4 +66,12 @@ final class Constants {
         map.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_QUALITY);
         return map;
     }
+
+    private static Map<RenderingHints.Key, Object> createFastRenderingMap() {
+        final Map<RenderingHints.Key, Object> map = new HashMap<RenderingHints.Key, Object>();
+        map.put(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_OFF);
+        map.put(RenderingHints.KEY_STROKE_CONTROL, RenderingHints.VALUE_STROKE_NORMALIZE);
+        map.put(RenderingHints.KEY_RENDERING, RenderingHints.VALUE_RENDER_SPEED);
+        return map;
+    }
 }
\ No newline at end of file
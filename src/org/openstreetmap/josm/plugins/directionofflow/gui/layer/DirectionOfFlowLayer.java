@@ -16,13 +16,18 @@
 package org.openstreetmap.josm.plugins.directionofflow.gui.layer;
 
 
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.FAST_RENDERING_MAP;
 import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.RENDERING_MAP;
 import java.awt.Graphics2D;
 import java.awt.Point;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 import java.util.ArrayList;
 import java.util.List;
 import javax.swing.Action;
 import javax.swing.Icon;
+import javax.swing.Timer;
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.osm.visitor.BoundingXYVisitor;
 import org.openstreetmap.josm.gui.MapView;
@@ -31,24 +36,37 @@ import org.openstreetmap.josm.gui.dialogs.LayerListPopup;
 import org.openstreetmap.josm.gui.layer.Layer;
 import org.openstreetmap.josm.plugins.directionofflow.entity.DataSet;
 import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+import org.openstreetmap.josm.plugins.directionofflow.util.RoadSegmentIndex;
 import org.openstreetmap.josm.plugins.directionofflow.util.Util;
 import org.openstreetmap.josm.plugins.directionofflow.util.cnf.Config;
 import org.openstreetmap.josm.plugins.directionofflow.util.cnf.GuiConfig;
 import org.openstreetmap.josm.plugins.directionofflow.util.cnf.IconConfig;
+import org.openstreetmap.josm.plugins.directionofflow.util.pref.PreferenceManager;
 
 
 /**
  * Defines the direction of flow layer.
  *
  * @author Beata
- * @version $Revision: 51 $
+ * @version $Revision: 52 $
  */
 public class DirectionOfFlowLayer extends Layer {
 
+    private static final long NANOS_PER_MILLI = 1000000L;
+
     private final PaintHandler paintHandler;
+    private final TileRenderer tileRenderer;
 
     private DataSet dataSet;
-    private List<RoadSegment> selectedRoadSegments;
+    private RoadSegmentIndex roadSegmentIndex;
+    /* true while the data set is a partial search result; the tiles are rendered only for a complete data set */
+    private boolean partial;
+    private final SelectionModel selectedRoadSegments;
+
+    /* the state of the adaptive paint quality; accessed only from the EDT */
+    private final Timer settleTimer;
+    private boolean moving;
+    private long lastQualityPaintTime;
 
 
     /**
@@ -57,7 +75,20 @@ public class DirectionOfFlowLayer extends Layer {
     public DirectionOfFlowLayer() {
         super(GuiConfig.getInstance().getPluginName());
         this.paintHandler = new PaintHandler();
-        this.selectedRoadSegments = new ArrayList<>();
+        this.tileRenderer = new TileRenderer();
+        this.selectedRoadSegments = new SelectionModel();
+        this.settleTimer = new Timer(Config.getInstance().getRenderSettleDelay(), new ActionListener() {
+
+            @Override
+            public void actionPerformed(final ActionEvent event) {
+                moving = false;
+                if (paintHandler.getStatistics().isFastPaint() && Main.map != null && Main.map.mapView != null) {
+                    // repaint in full quality
+                    Main.map.mapView.repaint();
+                }
+            }
+        });
+        this.settleTimer.setRepeats(false);
     }
 
 
@@ -91,14 +122,25 @@ public class DirectionOfFlowLayer extends Layer {
 
     @Override
     public void paint(final Graphics2D graphics, final MapView mapView, final Bounds bounds) {
+        final long start = System.nanoTime();
+        // while the map moves, the quality is lowered only if a full quality paint does not fit the frame budget
+        final boolean fast = moving
+                && lastQualityPaintTime > Config.getInstance().getRenderFrameBudget() * NANOS_PER_MILLI;
         mapView.setDoubleBuffered(true);
-        graphics.setRenderingHints(RENDERING_MAP);
+        graphics.setRenderingHints(fast ? FAST_RENDERING_MAP : RENDERING_MAP);
         if (dataSet != null) {
+            paintHandler.beginPaint(mapView, bounds, fast);
             final int zoom = Util.zoom(bounds);
             if (zoom > Config.getInstance().getMaxClusterZoom()) {
                 // display segments
                 if (dataSet.getRoadSegments() != null && !dataSet.getRoadSegments().isEmpty()) {
-                    paintHandler.drawRoadSegments(graphics, mapView, dataSet.getRoadSegments(), selectedRoadSegments);
+                    if (!partial && PreferenceManager.getInstance().loadTileRenderingFlag()
+                            && tileRenderer.paint(graphics, mapView, zoom)) {
+                        paintHandler.drawSelectedRoadSegments(graphics, mapView, zoom, selectedRoadSegments);
+                    } else {
+                        paintHandler.drawRoadSegments(graphics, mapView, zoom, dataSet.getRoadSegments(),
+                                selectedRoadSegments);
+                    }
                 }
             } else {
                 // display clusters
@@ -107,6 +149,18 @@ public class DirectionOfFlowLayer extends Layer {
                 }
             }
         }
+        final long duration = System.nanoTime() - start;
+        if (!fast) {
+            lastQualityPaintTime = duration;
+        }
+        paintHandler.getStatistics().paintFinished(duration, fast);
+    }
+
+    @Override
+    public void destroy() {
+        settleTimer.stop();
+        tileRenderer.destroy();
+        super.destroy();
     }
 
     @Override
@@ -127,19 +181,79 @@ public class DirectionOfFlowLayer extends Layer {
      */
     public void setDataSet(final DataSet dataSet) {
         this.dataSet = dataSet;
-        if (!selectedRoadSegments.isEmpty() && !this.dataSet.getRoadSegments().isEmpty()) {
-            final List<RoadSegment> newList = new ArrayList<>();
-            for (final RoadSegment segment : this.selectedRoadSegments) {
-                if (this.dataSet.getRoadSegments().contains(segment)) {
-                    final int idx = this.dataSet.getRoadSegments().indexOf(segment);
-                    final RoadSegment newSegent = this.dataSet.getRoadSegments().get(idx);
-                    newList.add(newSegent);
-                }
-            }
-            this.selectedRoadSegments = newList;
+        this.roadSegmentIndex = dataSet != null ? new RoadSegmentIndex(dataSet.getRoadSegments()) : null;
+        this.partial = false;
+        paintHandler.clearCache();
+        tileRenderer.setData(roadSegmentIndex);
+        if (!selectedRoadSegments.isEmpty() && dataSet != null && !dataSet.getRoadSegments().isEmpty()) {
+            selectedRoadSegments.retain(dataSet);
+        }
+    }
+
+    /**
+     * Sets a partial data set, loaded while the search is still running. The partial data sets of a search grow with
+     * every loaded batch, therefore the cached segment paths remain valid; the road segment index is built only if a
+     * road segment is selected, and the offscreen tiles are rendered only after the complete data set is set through
+     * {@link #setDataSet(DataSet)}. The given data set is extended by {@link #appendPartialDataSet(DataSet)}.
+     *
+     * @param dataSet a {@code DataSet} containing the road segments/clusters loaded so far
+     */
+    public void setPartialDataSet(final DataSet dataSet) {
+        this.dataSet = dataSet;
+        this.roadSegmentIndex = null;
+        this.partial = true;
+        if (!selectedRoadSegments.isEmpty() && dataSet != null && !dataSet.getRoadSegments().isEmpty()) {
+            selectedRoadSegments.retain(dataSet);
+        }
+    }
+
+    /**
+     * Appends a batch loaded while the search is still running to the partial data set. Only the given batch is
+     * processed; the partial data set is modified, therefore it must not be shared with other components. If the
+     * layer displays a complete data set, a copy of it becomes the partial data set.
+     *
+     * @param dataSet a {@code DataSet} containing the road segments/clusters loaded since the last update
+     */
+    public void appendPartialDataSet(final DataSet dataSet) {
+        if (partial && this.dataSet != null) {
+            this.dataSet.append(dataSet);
+            this.roadSegmentIndex = null;
+        } else {
+            final DataSet result = this.dataSet != null ? new DataSet(new ArrayList<>(this.dataSet.getClusters()),
+                    new ArrayList<>(this.dataSet.getRoadSegments())) : new DataSet();
+            result.append(dataSet);
+            setPartialDataSet(result);
         }
     }
 
+    /**
+     * Notifies the layer that the map view is panned or zoomed. Until the view settles, the layer is painted in a
+     * faster, lower quality mode if a full quality paint exceeds the frame budget; afterwards it is painted again in
+     * full quality.
+     */
+    public void viewChanged() {
+        moving = true;
+        settleTimer.restart();
+    }
+
+    /**
+     * Returns the statistics of the last paint operation, including the duration of the recent paint operations.
+     *
+     * @return a {@code PaintStatistics} object
+     */
+    public PaintStatistics getPaintStatistics() {
+        return paintHandler.getStatistics();
+    }
+
+    /**
+     * Returns the layer's data set.
+     *
+     * @return a {@code DataSet}, or null if no data was loaded
+     */
+    public DataSet getDataSet() {
+        return dataSet;
+    }
+
     /**
      * Updates the selected road segments.
      *
@@ -149,13 +263,7 @@ public class DirectionOfFlowLayer extends Layer {
         if (roadSegment == null) {
             selectedRoadSegments.clear();
         } else {
-            final int idx = selectedRoadSegments.indexOf(roadSegment);
-            if (idx > -1) {
-                selectedRoadSegments.remove(roadSegment);
-                selectedRoadSegments.add(idx, roadSegment);
-            } else {
-                selectedRoadSegments.add(roadSegment);
-            }
+            selectedRoadSegments.add(roadSegment);
         }
     }
 
@@ -167,8 +275,12 @@ public class DirectionOfFlowLayer extends Layer {
      * @return a {@code RoadSegment} object
      */
     public RoadSegment nearbyRoadSegment(final Point point, final boolean multiSelect) {
+        if (roadSegmentIndex == null && dataSet != null) {
+            // the index of a partial data set is built on demand
+            roadSegmentIndex = new RoadSegmentIndex(dataSet.getRoadSegments());
+        }
         final RoadSegment roadSegment =
-                dataSet != null ? Util.nearbyRoadSegment(dataSet.getRoadSegments(), point) : null;
+                roadSegmentIndex != null ? Util.nearbyRoadSegment(roadSegmentIndex, point) : null;
         if (!multiSelect) {
             selectedRoadSegments.clear();
         }
@@ -181,15 +293,16 @@ public class DirectionOfFlowLayer extends Layer {
      * @return
      */
     public RoadSegment lastSelectedRoadSegment() {
-        return selectedRoadSegments.isEmpty() ? null : selectedRoadSegments.get(selectedRoadSegments.size() - 1);
+        return selectedRoadSegments.getLast();
     }
 
     /**
-     * Returns the selected road segments. If no road segment(s) is selected the method returns an empty list.
+     * Returns the selected road segments, in selection order. If no road segment(s) is selected the method returns an
+     * empty list. The returned list is not updated when the selection changes.
      *
      * @return a list of {@code RoadSegment}s
      */
     public List<RoadSegment> getSelectedRoadSegments() {
-        return selectedRoadSegments;
+        return selectedRoadSegments.toList();
     }
 }
\ No newline at end of file
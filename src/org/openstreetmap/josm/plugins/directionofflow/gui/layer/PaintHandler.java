@@ -15,21 +15,19 @@
  */
 package org.openstreetmap.josm.plugins.directionofflow.gui.layer;
 
-import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.ARROW_LENGTH;
-import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.CLUSTER_COMPOSITE;
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.FAST_SEGMENT_STROKE;
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.FAST_SELECTED_SEGMENT_STROKE;
 import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.NORMAL_COLOR;
 import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.NORMAL_COMPOSITE;
-import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.PHI;
 import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.SEGMENT_STROKE;
 import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.SELECTED_COLOR;
 import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.SELECTED_SEGMENT_STROKE;
 import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.SEL_ARROW_LENGTH;
 import java.awt.Graphics2D;
-import java.awt.Point;
-import java.awt.geom.GeneralPath;
-import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+import java.awt.image.BufferedImage;
 import java.util.List;
-import java.util.SortedMap;
+import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.gui.MapView;
 import org.openstreetmap.josm.plugins.directionofflow.entity.Cluster;
 import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
@@ -38,70 +36,182 @@ import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
 /**
  *
  * @author Beata
- * @version $Revision: 11 $
+ * @version $Revision: 12 $
  */
 class PaintHandler {
 
+    /* the number of pixels a drawn segment may exceed its bounding box: the selected stroke and arrow head */
+    private static final double SEGMENT_MARGIN = 20;
+
+    private final ProjectionCache projectionCache = new ProjectionCache();
+    private final PaintStatistics statistics = new PaintStatistics();
+    private final ClusterSprites clusterSprites = new ClusterSprites();
+
+    /* the visible area, in degrees, and the size of a pixel in degrees */
+    private double minLat;
+    private double minLon;
+    private double maxLat;
+    private double maxLon;
+    private double pixelHeight;
+    private double pixelWidth;
+
+    /* the visible area extended by SEGMENT_MARGIN, in fixed-point format */
+    private int minFixedLat;
+    private int minFixedLon;
+    private int maxFixedLat;
+    private int maxFixedLon;
+
+    /* specifies if the current paint operation uses the faster, lower quality mode */
+    private boolean fast;
+
+    /* the radiuses of the clusters drawn last, valid while the cluster list and the zoom level do not change */
+    private List<Cluster> radiusClusters;
+    private int radiusClusterCount;
+    private int radiusZoom;
+    private double[] clusterRadiuses;
+
+
+    /**
+     * Prepares a new paint operation: sets the visible area used for culling and resets the statistics.
+     *
+     * @param mapView the current {@code MapView}
+     * @param bounds the visible area, as passed to the layer's paint method
+     * @param fast specifies if the road segments should be drawn with thinner, cheaper strokes
+     */
+    void beginPaint(final MapView mapView, final Bounds bounds, final boolean fast) {
+        this.fast = fast;
+        minLat = bounds.getMinLat();
+        minLon = bounds.getMinLon();
+        maxLat = bounds.getMaxLat();
+        maxLon = bounds.getMaxLon();
+        pixelHeight = mapView.getHeight() > 0 ? (maxLat - minLat) / mapView.getHeight() : 0;
+        pixelWidth = mapView.getWidth() > 0 ? (maxLon - minLon) / mapView.getWidth() : 0;
+        minFixedLat = RoadSegment.toFixedPoint(minLat - SEGMENT_MARGIN * pixelHeight);
+        minFixedLon = RoadSegment.toFixedPoint(minLon - SEGMENT_MARGIN * pixelWidth);
+        maxFixedLat = RoadSegment.toFixedPoint(maxLat + SEGMENT_MARGIN * pixelHeight);
+        maxFixedLon = RoadSegment.toFixedPoint(maxLon + SEGMENT_MARGIN * pixelWidth);
+        statistics.reset();
+    }
+
     /**
+     * Draws the given road segments, the selected ones on top of the others. The paths of the not selected segments
+     * are cached with their arrow heads, so drawing them allocates no objects besides the ones created by the
+     * {@code Graphics2D} implementation.
      *
-     * @param graphics
-     * @param mapView
-     * @param roadSegments
+     * @param graphics the {@code Graphics2D} used for drawing
+     * @param mapView the current {@code MapView}
+     * @param zoom the current zoom level
+     * @param roadSegments the {@code RoadSegment}s to be drawn
+     * @param selectedRoadSigns the selected {@code RoadSegment}s
      */
-    void drawRoadSegments(final Graphics2D graphics, final MapView mapView,
-            final List<RoadSegment> roadSegments, final List<RoadSegment> selectedRoadSigns) {
-        for (final RoadSegment roadSegment : roadSegments) {
-            if (!selectedRoadSigns.contains(roadSegment)) {
-                drawRoadSegment(graphics, mapView, roadSegment, false);
+    void drawRoadSegments(final Graphics2D graphics, final MapView mapView, final int zoom,
+            final List<RoadSegment> roadSegments, final SelectionModel selectedRoadSigns) {
+        projectionCache.update(mapView, zoom);
+        graphics.setStroke(fast ? FAST_SEGMENT_STROKE : SEGMENT_STROKE);
+        graphics.setColor(NORMAL_COLOR);
+        graphics.translate(projectionCache.getOffsetX(), projectionCache.getOffsetY());
+        for (int i = 0; i < roadSegments.size(); i++) {
+            final RoadSegment roadSegment = roadSegments.get(i);
+            if (!selectedRoadSigns.contains(roadSegment) && isVisible(roadSegment)) {
+                graphics.draw(projectionCache.path(mapView, roadSegment));
             }
         }
-        for (final RoadSegment roadSegment : selectedRoadSigns) {
-            drawRoadSegment(graphics, mapView, roadSegment, true);
+        graphics.translate(-projectionCache.getOffsetX(), -projectionCache.getOffsetY());
+        drawSelectedRoadSegments(graphics, mapView, zoom, selectedRoadSigns);
+    }
+
+    /**
+     * Draws only the selected road segments. Used when the other segments are drawn from pre-rendered tiles. The
+     * paths of the selected segments are built on every call, since they have a larger arrow head.
+     *
+     * @param graphics the {@code Graphics2D} used for drawing
+     * @param mapView the current {@code MapView}
+     * @param zoom the current zoom level
+     * @param selectedRoadSegments the selected {@code RoadSegment}s
+     */
+    void drawSelectedRoadSegments(final Graphics2D graphics, final MapView mapView, final int zoom,
+            final SelectionModel selectedRoadSegments) {
+        projectionCache.update(mapView, zoom);
+        graphics.setStroke(fast ? FAST_SELECTED_SEGMENT_STROKE : SELECTED_SEGMENT_STROKE);
+        graphics.setColor(SELECTED_COLOR);
+        for (final RoadSegment roadSegment : selectedRoadSegments) {
+            if (isVisible(roadSegment)) {
+                graphics.draw(PaintUtil.buildPath(mapView, roadSegment, projectionCache.getTolerance(),
+                        SEL_ARROW_LENGTH));
+            }
         }
     }
 
-    private void drawRoadSegment(final Graphics2D graphics, final MapView mapView, final RoadSegment segment,
-            final boolean selected) {
-        // draw segment
-        if (selected) {
-            graphics.setStroke(SELECTED_SEGMENT_STROKE);
-            graphics.setColor(SELECTED_COLOR);
+    private boolean isVisible(final RoadSegment roadSegment) {
+        final boolean visible = roadSegment.getMaxLat() >= minFixedLat && roadSegment.getMinLat() <= maxFixedLat
+                && roadSegment.getMaxLon() >= minFixedLon && roadSegment.getMinLon() <= maxFixedLon;
+        if (visible) {
+            statistics.segmentDrawn();
         } else {
-            graphics.setStroke(SEGMENT_STROKE);
-            graphics.setColor(NORMAL_COLOR);
-        }
-        final GeneralPath path = PaintUtil.buildPath(graphics, mapView, segment);
-        graphics.draw(path);
-
-        // draw arrow
-        final Point tip = mapView.getPoint(segment.getPoints().get(segment.getPoints().size() - 1));
-        final Point tail = mapView.getPoint(segment.getPoints().get(segment.getPoints().size() - 2));
-        final double theta = Math.atan2((tip.getY() - tail.getY()), (tip.getX() - tail.getX()));
-        double rho = theta + PHI;
-        final double arrowLength = selected ? SEL_ARROW_LENGTH : ARROW_LENGTH;
-        for (int j = 0; j < 2; j++) {
-            graphics.draw(new Line2D.Double(tip.getX(), tip.getY(), tip.getX() - arrowLength * Math.cos(rho),
-                    tip.getY() - arrowLength * Math.sin(rho)));
-            rho = theta - PHI;
+            statistics.segmentCulled();
         }
+        return visible;
+    }
+
+    /**
+     * Drops the cached segment paths. Should be called whenever the displayed road segments change.
+     */
+    void clearCache() {
+        projectionCache.clear();
     }
 
     /**
+     * Draws the given clusters. The radiuses of the clusters are computed once for a cluster list and zoom level, and
+     * the circles are copied from pre-rendered images.
      *
-     * @param graphics
-     * @param mapView
-     * @param zoom
-     * @param clusters
+     * @param graphics the {@code Graphics2D} used for drawing
+     * @param mapView the current {@code MapView}
+     * @param zoom the current zoom level
+     * @param clusters the list of {@code Cluster}s, ordered ascending by size
      */
     void drawClusters(final Graphics2D graphics, final MapView mapView, final int zoom,
             final List<Cluster> clusters) {
-        final SortedMap<Integer, Double> clusterRadiusMap = PaintUtil.generateClusterRadiusMap(zoom, clusters);
-        graphics.setComposite(CLUSTER_COMPOSITE);
-        for (final Cluster cluster : clusters) {
-            final Double radius = PaintUtil.clusterRadius(clusterRadiusMap, cluster.getSize());
-            graphics.draw(
-                    PaintUtil.buildCircle(graphics, mapView.getPoint2D(cluster.getPoint()), NORMAL_COLOR, radius));
+        if (clusters != radiusClusters || clusters.size() != radiusClusterCount || zoom != radiusZoom) {
+            clusterRadiuses = PaintUtil.clusterRadiuses(zoom, clusters);
+            radiusClusters = clusters;
+            radiusClusterCount = clusters.size();
+            radiusZoom = zoom;
         }
+        // the images are already translucent
         graphics.setComposite(NORMAL_COMPOSITE);
+
+        // the clusters are ordered by size, so the radius changes only a few times
+        double spriteRadius = Double.NaN;
+        BufferedImage sprite = null;
+        for (int i = 0; i < clusterRadiuses.length; i++) {
+            final Cluster cluster = clusters.get(i);
+            final double radius = clusterRadiuses[i];
+            if (isVisible(cluster, radius)) {
+                if (radius != spriteRadius) {
+                    sprite = clusterSprites.get(graphics, radius);
+                    spriteRadius = radius;
+                }
+                final Point2D point = mapView.getPoint2D(cluster.getPoint());
+                graphics.drawImage(sprite, (int) Math.round(point.getX()) - ClusterSprites.MARGIN,
+                        (int) Math.round(point.getY()) - ClusterSprites.MARGIN, null);
+            }
+        }
+    }
+
+    private boolean isVisible(final Cluster cluster, final double radius) {
+        final double lat = cluster.getPoint().lat();
+        final double lon = cluster.getPoint().lon();
+        final boolean visible = lat >= minLat - radius * pixelHeight && lat <= maxLat + radius * pixelHeight
+                && lon >= minLon - radius * pixelWidth && lon <= maxLon + radius * pixelWidth;
+        if (visible) {
+            statistics.clusterDrawn();
+        } else {
+            statistics.clusterCulled();
+        }
+        return visible;
+    }
+
+    PaintStatistics getStatistics() {
+        return statistics;
     }
 }
\ No newline at end of file
@@ -0,0 +1,161 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.gui.layer;
+
+import java.util.Arrays;
+
+
+/**
+ * Holds the number of road segments and clusters drawn and culled by the last paint operation of the layer, and the
+ * duration of the recent paint operations. The statistics are updated from the event dispatch thread.
+ *
+ * @author Beata
+ * @version $Revision: 2 $
+ */
+public final class PaintStatistics {
+
+    /* the number of recent paint operations whose duration is kept */
+    private static final int PAINT_TIME_SAMPLES = 128;
+    private static final double NANOS_PER_MILLI = 1E6;
+    private static final double P50 = 0.5;
+    private static final double P99 = 0.99;
+
+    private int drawnSegments;
+    private int culledSegments;
+    private int drawnClusters;
+    private int culledClusters;
+    private boolean fastPaint;
+
+    /* ring buffer of paint durations, in nanoseconds */
+    private final long[] paintTimes = new long[PAINT_TIME_SAMPLES];
+    private int paintTimeCount;
+    private int nextPaintTime;
+
+
+    PaintStatistics() {}
+
+
+    void reset() {
+        drawnSegments = 0;
+        culledSegments = 0;
+        drawnClusters = 0;
+        culledClusters = 0;
+    }
+
+    void segmentDrawn() {
+        drawnSegments++;
+    }
+
+    void segmentCulled() {
+        culledSegments++;
+    }
+
+    void clusterDrawn() {
+        drawnClusters++;
+    }
+
+    void clusterCulled() {
+        culledClusters++;
+    }
+
+    void paintFinished(final long duration, final boolean fast) {
+        paintTimes[nextPaintTime] = duration;
+        nextPaintTime = (nextPaintTime + 1) % PAINT_TIME_SAMPLES;
+        paintTimeCount = Math.min(paintTimeCount + 1, PAINT_TIME_SAMPLES);
+        fastPaint = fast;
+    }
+
+    /**
+     * Returns the number of road segments drawn by the last paint operation.
+     *
+     * @return an integer value
+     */
+    public int getDrawnSegments() {
+        return drawnSegments;
+    }
+
+    /**
+     * Returns the number of road segments skipped by the last paint operation, since they were outside the view.
+     *
+     * @return an integer value
+     */
+    public int getCulledSegments() {
+        return culledSegments;
+    }
+
+    /**
+     * Returns the number of clusters drawn by the last paint operation.
+     *
+     * @return an integer value
+     */
+    public int getDrawnClusters() {
+        return drawnClusters;
+    }
+
+    /**
+     * Returns the number of clusters skipped by the last paint operation, since they were outside the view.
+     *
+     * @return an integer value
+     */
+    public int getCulledClusters() {
+        return culledClusters;
+    }
+
+    /**
+     * Checks if the last paint operation used the faster, lower quality mode of a moving map.
+     *
+     * @return true if the last paint was a fast paint, false otherwise
+     */
+    public boolean isFastPaint() {
+        return fastPaint;
+    }
+
+    /**
+     * Returns the median duration of the recent paint operations.
+     *
+     * @return a number of milliseconds, or {@code Double.NaN} if the layer was not painted yet
+     */
+    public double getPaintTimeP50() {
+        return paintTimePercentile(P50);
+    }
+
+    /**
+     * Returns the 99th percentile of the duration of the recent paint operations.
+     *
+     * @return a number of milliseconds, or {@code Double.NaN} if the layer was not painted yet
+     */
+    public double getPaintTimeP99() {
+        return paintTimePercentile(P99);
+    }
+
+    private double paintTimePercentile(final double percentile) {
+        double result = Double.NaN;
+        if (paintTimeCount > 0) {
+            final long[] sorted = Arrays.copyOf(paintTimes, paintTimeCount);
+            Arrays.sort(sorted);
+            final int index = Math.max(0, (int) Math.ceil(percentile * paintTimeCount) - 1);
+            result = sorted[index] / NANOS_PER_MILLI;
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "segments drawn=" + drawnSegments + ", culled=" + culledSegments + "; clusters drawn=" + drawnClusters
+                + ", culled=" + culledClusters + "; paint p50=" + getPaintTimeP50() + " ms, p99=" + getPaintTimeP99()
+                + " ms";
+    }
+}
\ No newline at end of file
@@ -16,18 +16,14 @@
 package org.openstreetmap.josm.plugins.directionofflow.gui.layer;
 
 import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.CLUSTER_RADIUS;
-import java.awt.Color;
-import java.awt.Graphics2D;
-import java.awt.Point;
-import java.awt.geom.Ellipse2D;
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.PHI;
 import java.awt.geom.GeneralPath;
-import java.awt.geom.Point2D;
+import java.util.Arrays;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
 import org.openstreetmap.josm.gui.MapView;
 import org.openstreetmap.josm.plugins.directionofflow.entity.Cluster;
 import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+import org.openstreetmap.josm.plugins.directionofflow.util.ScreenProjection;
 import org.openstreetmap.josm.plugins.directionofflow.util.cnf.ClusterConfig;
 
 
@@ -35,64 +31,134 @@ import org.openstreetmap.josm.plugins.directionofflow.util.cnf.ClusterConfig;
  * Helper class, holds utility methods.
  *
  * @author Beata
- * @version $Revision: 8 $
+ * @version $Revision: 9 $
  */
 final class PaintUtil {
 
+    /*
+     * the simplification tolerance at zoom level 0, in degrees: half a pixel at the largest scale of the zoom level,
+     * for map views up to 2048 pixels high
+     */
+    private static final double TOLERANCE = 0.125;
+
     private PaintUtil() {}
 
-    static SortedMap<Integer, Double> generateClusterRadiusMap(final int zoom, final List<Cluster> clusters) {
-        SortedMap<Integer, Double> map;
+    /**
+     * Computes the radius of each of the given clusters. The cluster sizes are divided into ranges of equal length,
+     * one range for each radius configured for the zoom level; the last range ends at the size of the last cluster.
+     * A cluster gets the radius of the first range containing its size, or {@link Constants#CLUSTER_RADIUS} if there
+     * is no such range.
+     *
+     * @param zoom the current zoom level
+     * @param clusters a non-empty list of {@code Cluster}s, ordered ascending by size
+     * @return the radiuses, in the order of the clusters
+     */
+    static double[] clusterRadiuses(final int zoom, final List<Cluster> clusters) {
         final int max = clusters.get(clusters.size() - 1).getSize();
         final List<Double> radiusList = ClusterConfig.getInstance().getRadiusList(zoom);
         final int count = ClusterConfig.getInstance().getCount();
+
+        // the upper limits of the ranges, ascending; a limit shared by several ranges keeps the last radius
+        final int[] limits = new int[count];
+        final double[] limitRadiuses = new double[count];
+        int length = 0;
         if (clusters.size() > 1) {
             final int x = max / count;
-            map = new TreeMap<>();
-            int i;
-            for (i = 1; i <= count - 1; i++) {
-                map.put(i * x, radiusList.get(i - 1));
+            for (int i = 1; i <= count - 1; i++) {
+                length = addLimit(limits, limitRadiuses, length, i * x, radiusList.get(i - 1));
             }
-            map.put(max, radiusList.get(i - 1));
-        } else {
-            map = new TreeMap<>();
-            map.put(max, radiusList.get(count - 1));
         }
-        return map;
-    }
+        length = addLimit(limits, limitRadiuses, length, max, radiusList.get(count - 1));
 
-    static Double clusterRadius(final SortedMap<Integer, Double> map, final Integer value) {
-        Double radius = null;
-        if (map.size() > 1) {
-            for (final Integer key : map.keySet()) {
-                if (value <= key) {
-                    radius = map.get(key);
-                    break;
-                }
+        final double[] radiuses = new double[clusters.size()];
+        for (int i = 0; i < radiuses.length; i++) {
+            final int size = clusters.get(i).getSize();
+            int index = Arrays.binarySearch(limits, 0, length, size);
+            if (index < 0) {
+                // a single range contains only its limit
+                index = length > 1 ? -index - 1 : length;
             }
-        } else {
-            radius = map.get(value);
+            radiuses[i] = index < length ? limitRadiuses[index] : CLUSTER_RADIUS;
         }
-        return radius != null ? radius : CLUSTER_RADIUS;
+        return radiuses;
     }
 
-    static GeneralPath buildPath(final Graphics2D g2D, final MapView mv, final RoadSegment segment) {
-        final GeneralPath path = new GeneralPath();
-        Point point = mv.getPoint(segment.getPoints().get(0));
-        path.moveTo(point.getX(), point.getY());
-        for (int i = 1; i < segment.getPoints().size(); i++) {
-            point = mv.getPoint(segment.getPoints().get(i));
-            path.lineTo(point.getX(), point.getY());
+    private static int addLimit(final int[] limits, final double[] limitRadiuses, final int length, final int limit,
+            final double radius) {
+        int result = length;
+        if (length > 0 && limits[length - 1] == limit) {
+            limitRadiuses[length - 1] = radius;
+        } else {
+            limits[length] = limit;
+            limitRadiuses[length] = radius;
+            result++;
         }
-        return path;
+        return result;
+    }
+
+    /**
+     * Returns the simplification tolerance of the given zoom level. Geometries simplified with this tolerance differ
+     * from the original ones by less than half a pixel.
+     *
+     * @param zoom the current zoom level
+     * @return a tolerance in degrees
+     */
+    static double simplificationTolerance(final int zoom) {
+        return TOLERANCE / (1L << zoom);
     }
 
+    /**
+     * Builds the screen path of the given road segment, skipping the points that are not significant at the given
+     * tolerance. The arrow head marking the direction of the segment is added to the path, such that the segment and
+     * its arrow are drawn by a single call.
+     *
+     * @param mv the current {@code MapView}
+     * @param segment a {@code RoadSegment}
+     * @param tolerance the simplification tolerance, in degrees
+     * @param arrowLength the length of the arrow head
+     * @return a {@code GeneralPath}
+     */
+    static GeneralPath buildPath(final MapView mv, final RoadSegment segment, final double tolerance,
+            final double arrowLength) {
+        return buildPath(new ScreenProjection(mv), segment, tolerance, arrowLength);
+    }
 
-    static Ellipse2D.Double buildCircle(final Graphics2D graphics, final Point2D point, final Color color,
-            final double radius) {
-        final Ellipse2D.Double circle = new Ellipse2D.Double(point.getX(), point.getY(), radius, radius);
-        graphics.setColor(color);
-        graphics.fill(circle);
-        return circle;
+    /**
+     * Builds the path of the given road segment with the given screen projection, see
+     * {@link #buildPath(MapView, RoadSegment, double, double)}.
+     *
+     * @param projection the {@code ScreenProjection} defining the screen coordinates
+     * @param segment a {@code RoadSegment}
+     * @param tolerance the simplification tolerance, in degrees
+     * @param arrowLength the length of the arrow head
+     * @return a {@code GeneralPath}
+     */
+    static GeneralPath buildPath(final ScreenProjection projection, final RoadSegment segment,
+            final double tolerance, final double arrowLength) {
+        final int count = segment.getPointCount();
+        final GeneralPath path = new GeneralPath(GeneralPath.WIND_NON_ZERO, count + 4);
+        projection.project(segment, 0);
+        path.moveTo(projection.getX(), projection.getY());
+        for (int i = 1; i < count; i++) {
+            if (segment.isSignificant(i, tolerance)) {
+                projection.project(segment, i);
+                path.lineTo(projection.getX(), projection.getY());
+            }
+        }
+        if (count > 1) {
+            // the arrow follows the last original edge, which is never simplified away entirely
+            final double tipX = projection.getX();
+            final double tipY = projection.getY();
+            projection.project(segment, count - 2);
+            final double theta = Math.atan2((tipY - projection.getY()), (tipX - projection.getX()));
+            double rho = theta + PHI;
+            for (int j = 0; j < 2; j++) {
+                path.moveTo(tipX, tipY);
+                path.lineTo(tipX - arrowLength * Math.cos(rho), tipY - arrowLength * Math.sin(rho));
+                rho = theta - PHI;
+            }
+        }
+        return path;
     }
+
 }
\ No newline at end of file
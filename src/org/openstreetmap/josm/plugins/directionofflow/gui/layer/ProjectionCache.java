@@ -0,0 +1,117 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.gui.layer;
+
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.ARROW_LENGTH;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.GeneralPath;
+import java.util.HashMap;
+import java.util.Map;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+
+
+/**
+ * Caches the screen-space paths of the road segments. The paths are valid as long as the scale of the map view does not
+ * change: if the map is only moved, the cached paths are reused with the offset returned by {@link #getOffsetX()} and
+ * {@link #getOffsetY()}. The paths are simplified with the tolerance of the current zoom level, and contain the arrow
+ * head of a not selected road segment.
+ *
+ * @author Beata
+ * @version $Revision: 2 $
+ */
+final class ProjectionCache {
+
+    private final Map<RoadSegment, GeneralPath> paths = new HashMap<>();
+
+    /* the map view state at the time the cached paths were built */
+    private double scale = Double.NaN;
+    private double east;
+    private double north;
+    private int width;
+    private int height;
+    private double tolerance;
+
+    /* the offset of the current map view relative to the cached state */
+    private double offsetX;
+    private double offsetY;
+
+
+    /**
+     * Updates the cache with the current state of the map view. If the scale changed, the cached paths are dropped.
+     *
+     * @param mapView the current {@code MapView}
+     * @param zoom the current zoom level
+     */
+    void update(final MapView mapView, final int zoom) {
+        final EastNorth center = mapView.getCenter();
+        if (Double.compare(scale, mapView.getScale()) != 0) {
+            paths.clear();
+            scale = mapView.getScale();
+            tolerance = PaintUtil.simplificationTolerance(zoom);
+            east = center.east();
+            north = center.north();
+            width = mapView.getWidth();
+            height = mapView.getHeight();
+        }
+        offsetX = (east - center.east()) / scale + (mapView.getWidth() - width) / 2.0;
+        offsetY = (center.north() - north) / scale + (mapView.getHeight() - height) / 2.0;
+    }
+
+    /**
+     * Returns the cached path of the given road segment; if there is no such path, the path is built and added to the
+     * cache. The path is relative to the cached map view state; it needs to be translated by the current offset.
+     *
+     * @param mapView the current {@code MapView}
+     * @param roadSegment a {@code RoadSegment}
+     * @return a {@code GeneralPath}
+     */
+    GeneralPath path(final MapView mapView, final RoadSegment roadSegment) {
+        GeneralPath path = paths.get(roadSegment);
+        if (path == null) {
+            path = PaintUtil.buildPath(mapView, roadSegment, tolerance, ARROW_LENGTH);
+            path.transform(AffineTransform.getTranslateInstance(-offsetX, -offsetY));
+            paths.put(roadSegment, path);
+        }
+        return path;
+    }
+
+    /**
+     * Drops all the cached paths.
+     */
+    void clear() {
+        paths.clear();
+        scale = Double.NaN;
+    }
+
+    /**
+     * Returns the simplification tolerance of the cached paths.
+     *
+     * @return a tolerance in degrees
+     */
+    double getTolerance() {
+        return tolerance;
+    }
+
+    double getOffsetX() {
+        return offsetX;
+    }
+
+    double getOffsetY() {
+        return offsetY;
+    }
+}
\ No newline at end of file
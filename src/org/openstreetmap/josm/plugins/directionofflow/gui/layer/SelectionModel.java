@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.gui.layer;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openstreetmap.josm.plugins.directionofflow.entity.DataSet;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+
+
+/**
+ * Holds the selected road segments in selection order. The segments are keyed on their identity, therefore the
+ * membership test, adding and replacing a segment take constant time.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+final class SelectionModel implements Iterable<RoadSegment> {
+
+    /* maps the identity of a selected segment to the selected instance, in selection order */
+    private final Map<RoadSegment, RoadSegment> selection = new LinkedHashMap<>();
+    private RoadSegment last;
+
+
+    /**
+     * Adds the given road segment to the selection. If an equal segment is already selected, it is replaced by the
+     * given one and keeps its position.
+     *
+     * @param roadSegment a {@code RoadSegment}
+     */
+    void add(final RoadSegment roadSegment) {
+        if (selection.put(roadSegment, roadSegment) == null) {
+            last = roadSegment;
+        } else if (roadSegment.equals(last)) {
+            last = roadSegment;
+        }
+    }
+
+    /**
+     * Checks if the given road segment is selected.
+     *
+     * @param roadSegment a {@code RoadSegment}
+     * @return true if the segment is selected, false otherwise
+     */
+    boolean contains(final RoadSegment roadSegment) {
+        return selection.containsKey(roadSegment);
+    }
+
+    /**
+     * Keeps only the selected road segments that are contained by the given data set, replacing them with the
+     * instances of the data set. The selection order is kept.
+     *
+     * @param dataSet the {@code DataSet} containing the segments that can remain selected
+     */
+    void retain(final DataSet dataSet) {
+        last = null;
+        for (final Iterator<Map.Entry<RoadSegment, RoadSegment>> it = selection.entrySet().iterator(); it.hasNext();) {
+            final Map.Entry<RoadSegment, RoadSegment> entry = it.next();
+            final RoadSegment instance = dataSet.getRoadSegment(entry.getKey());
+            if (instance == null) {
+                it.remove();
+            } else {
+                entry.setValue(instance);
+                last = instance;
+            }
+        }
+    }
+
+    /**
+     * Clears the selection.
+     */
+    void clear() {
+        selection.clear();
+        last = null;
+    }
+
+    boolean isEmpty() {
+        return selection.isEmpty();
+    }
+
+    /**
+     * Returns the last selected road segment.
+     *
+     * @return a {@code RoadSegment}, or null if the selection is empty
+     */
+    RoadSegment getLast() {
+        return last;
+    }
+
+    /**
+     * Returns the selected road segments in selection order. The returned list is a copy.
+     *
+     * @return a list of {@code RoadSegment}s
+     */
+    List<RoadSegment> toList() {
+        return new ArrayList<>(selection.values());
+    }
+
+    @Override
+    public Iterator<RoadSegment> iterator() {
+        return selection.values().iterator();
+    }
+}
\ No newline at end of file
@@ -0,0 +1,213 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.gui.layer;
+
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.ARROW_LENGTH;
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.NORMAL_COLOR;
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.RENDERING_MAP;
+import static org.openstreetmap.josm.plugins.directionofflow.gui.layer.Constants.SEGMENT_STROKE;
+import java.awt.Graphics2D;
+import java.awt.Point;
+import java.awt.image.BufferedImage;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.gui.MapView;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+import org.openstreetmap.josm.plugins.directionofflow.util.RoadSegmentIndex;
+import org.openstreetmap.josm.plugins.directionofflow.util.ScreenProjection;
+import org.openstreetmap.josm.plugins.directionofflow.util.Util;
+
+
+/**
+ * Renders all the road segments in the normal state into image tiles on a background thread. The tiles are aligned to
+ * a pixel grid anchored at the projection origin, so they can be reused while the map is moved; they are dropped when
+ * the scale or the displayed road segments change. The tiles do not depend on the selection: the selected road
+ * segments are also part of the tiles, and they are drawn again in the selected state on top of them.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+final class TileRenderer {
+
+    private static final int TILE_SIZE = 256;
+    private static final int MAX_TILES = 96;
+
+    /* extra pixels around a tile, such that the strokes and arrow heads crossing the tile border are not cut off */
+    private static final int MARGIN = 20;
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor(Util.threadFactory("dof-tile-renderer"));
+    private final Map<Point, BufferedImage> tiles = new LinkedHashMap<Point, BufferedImage>(16, 0.75F, true) {
+
+        private static final long serialVersionUID = 6523781263407816513L;
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<Point, BufferedImage> eldest) {
+            return size() > MAX_TILES;
+        }
+    };
+    private final Set<Point> pending = new HashSet<>();
+
+    private RoadSegmentIndex roadSegmentIndex;
+    private double scale = Double.NaN;
+    private double tolerance;
+
+    /* incremented whenever the rendered tiles become invalid; renders started for an older value are discarded */
+    private int generation;
+
+
+    /**
+     * Sets the road segments to be rendered. The existing tiles are dropped.
+     *
+     * @param roadSegmentIndex a {@code RoadSegmentIndex} containing the road segments
+     */
+    synchronized void setData(final RoadSegmentIndex roadSegmentIndex) {
+        this.roadSegmentIndex = roadSegmentIndex;
+        invalidate();
+    }
+
+    /**
+     * Draws the tiles covering the map view. If some of the tiles are not rendered yet, nothing is drawn and the
+     * missing tiles are scheduled for rendering; the map view is repainted once they are available.
+     *
+     * @param graphics the {@code Graphics2D} used for drawing
+     * @param mapView the current {@code MapView}
+     * @param zoom the current zoom level
+     * @return true if the map view was covered by tiles, false otherwise
+     */
+    boolean paint(final Graphics2D graphics, final MapView mapView, final int zoom) {
+        final EastNorth center = mapView.getCenter();
+        final double currentScale = mapView.getScale();
+        final double originX = center.east() / currentScale - mapView.getWidth() / 2.0;
+        final double originY = -center.north() / currentScale - mapView.getHeight() / 2.0;
+        final int minX = (int) Math.floor(originX / TILE_SIZE);
+        final int maxX = (int) Math.floor((originX + mapView.getWidth()) / TILE_SIZE);
+        final int minY = (int) Math.floor(originY / TILE_SIZE);
+        final int maxY = (int) Math.floor((originY + mapView.getHeight()) / TILE_SIZE);
+        final int count = (maxX - minX + 1) * (maxY - minY + 1);
+        if (count > MAX_TILES) {
+            // the view would not fit into the cache
+            return false;
+        }
+        final BufferedImage[] images = new BufferedImage[count];
+        boolean complete = true;
+        synchronized (this) {
+            if (Double.compare(scale, currentScale) != 0) {
+                scale = currentScale;
+                tolerance = PaintUtil.simplificationTolerance(zoom);
+                invalidate();
+            }
+            int i = 0;
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    final Point key = new Point(x, y);
+                    images[i] = tiles.get(key);
+                    if (images[i] == null) {
+                        complete = false;
+                        schedule(key);
+                    }
+                    i++;
+                }
+            }
+        }
+        if (complete) {
+            int i = 0;
+            for (int y = minY; y <= maxY; y++) {
+                for (int x = minX; x <= maxX; x++) {
+                    graphics.drawImage(images[i++], (int) Math.round(x * TILE_SIZE - originX),
+                            (int) Math.round(y * TILE_SIZE - originY), null);
+                }
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Stops the rendering thread. The renderer cannot be used afterwards.
+     */
+    void destroy() {
+        executor.shutdownNow();
+    }
+
+    private void invalidate() {
+        generation++;
+        tiles.clear();
+        pending.clear();
+    }
+
+    private void schedule(final Point key) {
+        if (roadSegmentIndex != null && pending.add(key)) {
+            final int tileGeneration = generation;
+            final RoadSegmentIndex tileIndex = roadSegmentIndex;
+            final double tileScale = scale;
+            final double tileTolerance = tolerance;
+            executor.execute(new Runnable() {
+
+                @Override
+                public void run() {
+                    synchronized (TileRenderer.this) {
+                        if (tileGeneration != generation) {
+                            return;
+                        }
+                    }
+                    final BufferedImage image = render(tileIndex, tileScale, tileTolerance, key.x, key.y);
+                    synchronized (TileRenderer.this) {
+                        if (tileGeneration != generation) {
+                            return;
+                        }
+                        pending.remove(key);
+                        tiles.put(key, image);
+                    }
+                    if (Main.map != null && Main.map.mapView != null) {
+                        Main.map.mapView.repaint();
+                    }
+                }
+            });
+        }
+    }
+
+    private static BufferedImage render(final RoadSegmentIndex roadSegmentIndex, final double scale,
+            final double tolerance, final int tileX, final int tileY) {
+        final BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_ARGB);
+        final Graphics2D graphics = image.createGraphics();
+        graphics.setRenderingHints(RENDERING_MAP);
+        graphics.setStroke(SEGMENT_STROKE);
+        graphics.setColor(NORMAL_COLOR);
+
+        // the tile's area in world pixels is [tileX * TILE_SIZE, (tileX + 1) * TILE_SIZE), y pointing south
+        final double offsetX = (double) tileX * TILE_SIZE;
+        final double offsetY = (double) tileY * TILE_SIZE;
+        final Projection projection = Main.getProjection();
+        final ScreenProjection tileProjection = new ScreenProjection(scale, offsetX, offsetY);
+        final LatLon southWest = projection.eastNorth2latlon(
+                new EastNorth((offsetX - MARGIN) * scale, -(offsetY + TILE_SIZE + MARGIN) * scale));
+        final LatLon northEast = projection.eastNorth2latlon(
+                new EastNorth((offsetX + TILE_SIZE + MARGIN) * scale, -(offsetY - MARGIN) * scale));
+        for (final RoadSegment segment : roadSegmentIndex.query(southWest.lat(), southWest.lon(), northEast.lat(),
+                northEast.lon())) {
+            graphics.draw(PaintUtil.buildPath(tileProjection, segment, tolerance, ARROW_LENGTH));
+        }
+        graphics.dispose();
+        return image;
+    }
+}
\ No newline at end of file
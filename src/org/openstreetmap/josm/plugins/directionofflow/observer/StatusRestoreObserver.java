@@ -0,0 +1,36 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.observer;
+
+import java.util.List;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+
+
+/**
+ * Observes the road segments whose status is restored because the service rejected the comment changing it.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+public interface StatusRestoreObserver {
+
+    /**
+     * Invoked on the EDT after the status of the given road segments was restored.
+     *
+     * @param roadSegments the list of {@code RoadSegment}s having their previous status
+     */
+    void statusRestored(List<RoadSegment> roadSegments);
+}
\ No newline at end of file
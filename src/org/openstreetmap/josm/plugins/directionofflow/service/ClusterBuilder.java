@@ -0,0 +1,83 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.plugins.directionofflow.argument.BoundingBox;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Cluster;
+import org.openstreetmap.josm.plugins.directionofflow.entity.DataSet;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+
+
+/**
+ * Builds clusters from road segments, for displaying the zoom levels where the service returns clusters without
+ * contacting the service. The area of a tile is divided into a regular grid; the road segments are assigned to grid
+ * cells by their middle point, and each non-empty cell produces a cluster located at the mean position of its road
+ * segments, with the number of road segments as size.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+final class ClusterBuilder {
+
+    /* the number of grid cells along each side of a tile */
+    private static final int GRID_SIZE = 16;
+
+    private ClusterBuilder() {}
+
+
+    /**
+     * Builds the clusters of the given area. Only the road segments whose middle point is inside the area are counted,
+     * such that a road segment crossing the border of adjacent areas is counted once.
+     *
+     * @param bbox the {@code BoundingBox} of the area
+     * @param dataSet a {@code DataSet} containing the road segments of the area
+     * @return a {@code DataSet} containing only clusters
+     */
+    static DataSet build(final BoundingBox bbox, final DataSet dataSet) {
+        final double cellHeight = (bbox.getNorth() - bbox.getSouth()) / GRID_SIZE;
+        final double cellWidth = (bbox.getEast() - bbox.getWest()) / GRID_SIZE;
+        final double[] latSums = new double[GRID_SIZE * GRID_SIZE];
+        final double[] lonSums = new double[GRID_SIZE * GRID_SIZE];
+        final int[] counts = new int[GRID_SIZE * GRID_SIZE];
+        for (final RoadSegment roadSegment : dataSet.getRoadSegments()) {
+            if (roadSegment.getPointCount() > 0) {
+                final int middle = roadSegment.getPointCount() / 2;
+                final double lat = roadSegment.getLat(middle);
+                final double lon = roadSegment.getLon(middle);
+                if (lat >= bbox.getSouth() && lat < bbox.getNorth() && lon >= bbox.getWest()
+                        && lon < bbox.getEast()) {
+                    final int row = Math.min(GRID_SIZE - 1, (int) ((lat - bbox.getSouth()) / cellHeight));
+                    final int column = Math.min(GRID_SIZE - 1, (int) ((lon - bbox.getWest()) / cellWidth));
+                    final int cell = row * GRID_SIZE + column;
+                    latSums[cell] += lat;
+                    lonSums[cell] += lon;
+                    counts[cell]++;
+                }
+            }
+        }
+        final List<Cluster> clusters = new ArrayList<>();
+        for (int cell = 0; cell < counts.length; cell++) {
+            if (counts[cell] > 0) {
+                clusters.add(new Cluster(new LatLon(latSums[cell] / counts[cell], lonSums[cell] / counts[cell]),
+                        counts[cell]));
+            }
+        }
+        return new DataSet(clusters, null);
+    }
+}
\ No newline at end of file
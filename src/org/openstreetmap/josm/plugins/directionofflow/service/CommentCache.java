@@ -0,0 +1,154 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.service;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Comment;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+
+
+/**
+ * In-memory cache of the comments of the road segments. The comments of a road segment are considered up to date for
+ * the configured time to live; after that they are revalidated with the service using the validators (ETag,
+ * Last-Modified) of the response they were obtained from. If the number of cached road segments exceeds the maximum
+ * size, the least recently used ones are evicted.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+final class CommentCache {
+
+    private final int maxSize;
+    private final long ttl;
+    private final Map<RoadSegment, Entry> map;
+
+
+    /**
+     * Builds a new cache.
+     *
+     * @param maxSize the maximum number of road segments whose comments are cached
+     * @param ttl the time after which the cached comments need revalidation, in milliseconds
+     */
+    CommentCache(final int maxSize, final long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.map = new LinkedHashMap<RoadSegment, Entry>(16, 0.75F, true) {
+
+            private static final long serialVersionUID = 5873610204213346722L;
+
+            @Override
+            protected boolean removeEldestEntry(final Map.Entry<RoadSegment, Entry> eldest) {
+                return size() > CommentCache.this.maxSize;
+            }
+        };
+    }
+
+
+    /**
+     * Returns the cached entry of the given road segment, or null if there is no such entry. The returned entry may
+     * need revalidation.
+     *
+     * @param roadSegment a {@code RoadSegment}, only its identifiers are used
+     * @return an {@code Entry}
+     */
+    synchronized Entry get(final RoadSegment roadSegment) {
+        return map.get(roadSegment);
+    }
+
+    /**
+     * Stores the comments of the given road segment.
+     *
+     * @param roadSegment a {@code RoadSegment}, only its identifiers are used
+     * @param comments the comments returned by the service
+     * @param etag the ETag of the response, may be null
+     * @param lastModified the Last-Modified date of the response, may be null
+     */
+    synchronized void put(final RoadSegment roadSegment, final List<Comment> comments, final String etag,
+            final String lastModified) {
+        map.put(roadSegment, new Entry(comments, etag, lastModified, System.currentTimeMillis() + ttl));
+    }
+
+    /**
+     * Marks the cached comments of the given road segment as up to date, after the service confirmed that they did
+     * not change.
+     *
+     * @param roadSegment a {@code RoadSegment}, only its identifiers are used
+     */
+    synchronized void revalidated(final RoadSegment roadSegment) {
+        final Entry entry = map.get(roadSegment);
+        if (entry != null) {
+            map.put(roadSegment, new Entry(entry.comments, entry.etag, entry.lastModified,
+                    System.currentTimeMillis() + ttl));
+        }
+    }
+
+    /**
+     * Removes the cached comments of the given road segments.
+     *
+     * @param roadSegments a list of {@code RoadSegment}s
+     */
+    synchronized void remove(final List<RoadSegment> roadSegments) {
+        for (final RoadSegment roadSegment : roadSegments) {
+            map.remove(roadSegment);
+        }
+    }
+
+
+    /**
+     * The cached comments of a road segment.
+     */
+    static final class Entry {
+
+        private final List<Comment> comments;
+        private final String etag;
+        private final String lastModified;
+        private final long expirationTime;
+
+        private Entry(final List<Comment> comments, final String etag, final String lastModified,
+                final long expirationTime) {
+            this.comments = comments != null ? Collections.unmodifiableList(new ArrayList<>(comments))
+                    : Collections.<Comment>emptyList();
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.expirationTime = expirationTime;
+        }
+
+        /**
+         * Returns a modifiable copy of the cached comments.
+         *
+         * @return a list of {@code Comment}s
+         */
+        List<Comment> getComments() {
+            return new ArrayList<>(comments);
+        }
+
+        String getEtag() {
+            return etag;
+        }
+
+        String getLastModified() {
+            return lastModified;
+        }
+
+        boolean isExpired() {
+            return System.currentTimeMillis() >= expirationTime;
+        }
+    }
+}
\ No newline at end of file
@@ -15,8 +15,19 @@
  */
 package org.openstreetmap.josm.plugins.directionofflow.service;
 
+import java.io.File;
 import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.coor.LatLon;
 import org.openstreetmap.josm.plugins.directionofflow.argument.BoundingBox;
 import org.openstreetmap.josm.plugins.directionofflow.argument.SearchFilter;
@@ -25,6 +36,8 @@ import org.openstreetmap.josm.plugins.directionofflow.entity.DataSet;
 import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
 import org.openstreetmap.josm.plugins.directionofflow.service.entity.CommentRoot;
 import org.openstreetmap.josm.plugins.directionofflow.service.entity.Root;
+import org.openstreetmap.josm.plugins.directionofflow.util.Util;
+import org.openstreetmap.josm.plugins.directionofflow.util.cnf.Config;
 import org.openstreetmap.josm.plugins.directionofflow.util.http.HttpConnector;
 import org.openstreetmap.josm.plugins.directionofflow.util.http.HttpConnectorException;
 import org.openstreetmap.josm.plugins.directionofflow.util.http.HttpMethod;
@@ -41,7 +54,21 @@ import com.google.gson.JsonSyntaxException;
  */
 public class DirectionOfFlowService {
 
+    private static final String CACHE_DIR = "directionofflow";
+    /* the maximum number of zoom levels between the clusters built locally and the road segments they are built of */
+    private static final int MAX_LOCAL_CLUSTER_DEPTH = 3;
+    private static final String ETAG = "ETag";
+    private static final String LAST_MODIFIED = "Last-Modified";
+    private static final String IF_NONE_MATCH = "If-None-Match";
+    private static final String IF_MODIFIED_SINCE = "If-Modified-Since";
+
     private final Gson gson;
+    private final SearchCache cache;
+    private final DiskCache diskCache;
+    private final CommentCache commentCache;
+    private final ExecutorService executor;
+    private final Set<HttpConnector> searchConnectors =
+            Collections.newSetFromMap(new ConcurrentHashMap<HttpConnector, Boolean>());
 
     /**
      * Builds a new service object.
@@ -50,11 +77,22 @@ public class DirectionOfFlowService {
         final GsonBuilder builder = new GsonBuilder();
         builder.registerTypeAdapter(LatLon.class, new LatLonDeserializer());
         this.gson = builder.create();
+        this.cache = new SearchCache(Config.getInstance().getMemoryCacheSize());
+        this.diskCache = new DiskCache(new File(Main.pref.getCacheDirectory(), CACHE_DIR),
+                Config.getInstance().getDiskCacheTtl());
+        this.commentCache = new CommentCache(Config.getInstance().getCommentCacheSize(),
+                Config.getInstance().getCommentCacheTtl());
+        this.executor = Executors.newFixedThreadPool(Config.getInstance().getSearchThreads(),
+                Util.threadFactory("dof-search-tile"));
     }
 
     /**
      * Searches for data in the given bounding box and filters. Depending on the zoom level either returns a list of
-     * clusters or a list of segments.
+     * clusters or a list of segments. The searching area is split into tiles; tiles that were already retrieved with
+     * the same filter are served from the memory or disk cache, only the missing or expired tiles are requested from
+     * the service. The clusters of a tile are built locally if the road segments of the tile are cached. If the
+     * calling thread is interrupted or {@link #abortSearch()} is called, the operation stops with a
+     * {@code SearchAbortedException}; the tiles retrieved so far remain cached.
      *
      * @param bbox a {@code BoundingBox} defines the searching area
      * @param filter a {@code SearchFilter} defines the filters to be applied
@@ -64,15 +102,99 @@ public class DirectionOfFlowService {
      */
     public DataSet search(final BoundingBox bbox, final SearchFilter filter, final int zoom)
             throws DirectionOfFlowServiceException {
-        final String url = new HttpQueryBuilder(bbox, filter, zoom).build(Constants.SEARCH);
-        System.out.println(url);
-        final Root root = executeGet(url);
-        verifyResponseStatus(root);
-        return new DataSet(root.getClusters(), root.getRoadSegments());
+        return search(bbox, filter, zoom, null);
+    }
+
+    /**
+     * Searches for data in the given bounding box and filters, see {@link #search(BoundingBox, SearchFilter, int)}.
+     * The tiles missing from the memory cache are loaded concurrently. The given listener receives the data of the
+     * cached tiles, and the data of the other tiles in batches while the service responses are decoded.
+     *
+     * @param bbox a {@code BoundingBox} defines the searching area
+     * @param filter a {@code SearchFilter} defines the filters to be applied
+     * @param zoom the current zoom level
+     * @param listener a {@code SearchListener} to be notified about the loaded tiles, may be null
+     * @return a {@code DataSet} containing a list of clusters/road segment
+     * @throws DirectionOfFlowServiceException if the operation fails
+     */
+    public DataSet search(final BoundingBox bbox, final SearchFilter filter, final int zoom,
+            final SearchListener listener) throws DirectionOfFlowServiceException {
+        final List<DataSet> results = new ArrayList<>();
+        final List<Future<DataSet>> futures = new ArrayList<>();
+        for (final Tile tile : Tile.cover(bbox, tileZoom(zoom))) {
+            final DataSet result = getCachedTile(tile, filter);
+            if (result == null) {
+                futures.add(executor.submit(new Callable<DataSet>() {
+
+                    @Override
+                    public DataSet call() throws DirectionOfFlowServiceException {
+                        return loadTile(tile, filter, listener);
+                    }
+                }));
+            } else {
+                results.add(result);
+                if (listener != null) {
+                    listener.dataLoaded(result);
+                }
+            }
+        }
+        try {
+            for (final Future<DataSet> future : futures) {
+                results.add(future.get());
+            }
+        } catch (final InterruptedException e) {
+            cancel(futures);
+            abortSearch();
+            throw new SearchAbortedException("Search aborted");
+        } catch (final ExecutionException e) {
+            // the requests already sent for the other tiles are not needed anymore
+            cancel(futures);
+            abortSearch();
+            if (e.getCause() instanceof DirectionOfFlowServiceException) {
+                throw (DirectionOfFlowServiceException) e.getCause();
+            }
+            throw new DirectionOfFlowServiceException(e.getCause());
+        }
+        return DataSet.union(results);
+    }
+
+    /**
+     * Returns the locally stored data of the given bounding box and filters, without contacting the service. Expired
+     * disk cache entries are also returned, therefore the result may be outdated or incomplete; it is meant to be
+     * displayed until the result of {@link #search(BoundingBox, SearchFilter, int)} is available.
+     *
+     * @param bbox a {@code BoundingBox} defines the searching area
+     * @param filter a {@code SearchFilter} defines the filters to be applied
+     * @param zoom the current zoom level
+     * @return a {@code DataSet} containing a list of clusters/road segment
+     */
+    public DataSet searchLocal(final BoundingBox bbox, final SearchFilter filter, final int zoom) {
+        final List<DataSet> results = new ArrayList<>();
+        for (final Tile tile : Tile.cover(bbox, tileZoom(zoom))) {
+            DataSet result = getCachedTile(tile, filter);
+            if (result == null) {
+                result = diskCache.read(tile, filter, true);
+            }
+            if (result != null) {
+                results.add(result);
+            }
+        }
+        return DataSet.union(results);
+    }
+
+    /**
+     * Aborts the running search operations by closing their service connections.
+     */
+    public void abortSearch() {
+        for (final HttpConnector connector : searchConnectors) {
+            connector.abort();
+        }
     }
 
     /**
-     * Retrieves the comments of the given road segment, ordered descending by timestamp.
+     * Retrieves the comments of the given road segment, ordered descending by timestamp. The comments are cached; the
+     * cached comments are returned without contacting the service until they expire, and revalidated with a
+     * conditional request afterwards.
      *
      * @param wayId the identifier of the OSM way which contains this segment
      * @param fromNodeId the identifier of the OSM node which marks the start of this road segment
@@ -82,10 +204,41 @@ public class DirectionOfFlowService {
      */
     public List<Comment> retrieveComments(final Long wayId, final Long fromNodeId, final Long toNodeId)
             throws DirectionOfFlowServiceException {
-        final String url = new HttpQueryBuilder(wayId, fromNodeId, toNodeId).build(Constants.RETRIEVE_COMMENTS);
-        final Root root = executeGet(url);
-        verifyResponseStatus(root);
-        return root.getComments();
+        final RoadSegment key = new RoadSegment(wayId, fromNodeId, toNodeId);
+        final CommentCache.Entry entry = commentCache.get(key);
+        final List<Comment> result;
+        if (entry != null && !entry.isExpired()) {
+            result = entry.getComments();
+        } else {
+            final String url = new HttpQueryBuilder(wayId, fromNodeId, toNodeId).build(Constants.RETRIEVE_COMMENTS);
+            try {
+                final HttpConnector connector = new HttpConnector(url, HttpMethod.GET);
+                if (entry != null && entry.getEtag() != null) {
+                    connector.setRequestHeader(IF_NONE_MATCH, entry.getEtag());
+                }
+                if (entry != null && entry.getLastModified() != null) {
+                    connector.setRequestHeader(IF_MODIFIED_SINCE, entry.getLastModified());
+                }
+                final String response = connector.read();
+                if (connector.getResponseCode() == HttpURLConnection.HTTP_NOT_MODIFIED) {
+                    if (entry == null) {
+                        // the request was not conditional, the response has no comments to return
+                        throw new DirectionOfFlowServiceException("Unexpected 'not modified' response");
+                    }
+                    commentCache.revalidated(key);
+                    result = entry.getComments();
+                } else {
+                    final Root root = buildRoot(response);
+                    verifyResponseStatus(root);
+                    result = root.getComments() != null ? root.getComments() : new ArrayList<Comment>();
+                    commentCache.put(key, result, connector.getResponseHeader(ETAG),
+                            connector.getResponseHeader(LAST_MODIFIED));
+                }
+            } catch (final HttpConnectorException e) {
+                throw new DirectionOfFlowServiceException(e);
+            }
+        }
+        return result;
     }
 
     /**
@@ -103,24 +256,117 @@ public class DirectionOfFlowService {
         final String content = gson.toJson(commentRoot, CommentRoot.class);
         final Root root = executePost(url, content);
         verifyResponseStatus(root);
+        commentCache.remove(roadSegments);
+        if (comment.getStatus() != null) {
+            // the cached results contain the old status of the road segments
+            cache.clear();
+            diskCache.clear();
+        }
+    }
+
+    /**
+     * Updates the local caches after a comment was queued for the given road segments, before it is sent. The cached
+     * comments of the road segments are dropped. If the comment changes the status of the road segments, the cached
+     * search results are dropped, since they contain the road segments with the old status.
+     *
+     * @param comment the queued {@code Comment}
+     * @param roadSegments the list of commented {@code RoadSegment}s
+     */
+    public void commentQueued(final Comment comment, final List<RoadSegment> roadSegments) {
+        // the cached comment lists do not contain the queued comment
+        commentCache.remove(roadSegments);
+        if (comment.getStatus() != null) {
+            cache.clear();
+            diskCache.clear();
+        }
     }
 
+    private static void cancel(final List<Future<DataSet>> futures) {
+        for (final Future<DataSet> future : futures) {
+            future.cancel(true);
+        }
+    }
 
-    private Root executeGet(final String url) throws DirectionOfFlowServiceException {
-        String response = null;
+    /*
+     * Returns the data of the given tile from the memory cache. If a cluster tile is not cached, but the road segment
+     * tiles covering it are, the clusters are built locally from the road segments.
+     */
+    private DataSet getCachedTile(final Tile tile, final SearchFilter filter) {
+        DataSet result = cache.get(tile, filter);
+        final int segmentZoom = Config.getInstance().getMaxClusterZoom() + 1;
+        if (result == null && tile.getZoom() < segmentZoom
+                && segmentZoom - tile.getZoom() <= MAX_LOCAL_CLUSTER_DEPTH) {
+            final List<DataSet> segmentTiles = new ArrayList<>();
+            for (final Tile child : tile.children(segmentZoom)) {
+                final DataSet segmentTile = cache.get(child, filter);
+                if (segmentTile == null) {
+                    // the coverage is incomplete, the clusters are requested from the service
+                    segmentTiles.clear();
+                    break;
+                }
+                segmentTiles.add(segmentTile);
+            }
+            if (!segmentTiles.isEmpty()) {
+                result = ClusterBuilder.build(tile.getBoundingBox(), DataSet.union(segmentTiles));
+                cache.put(tile, filter, result);
+            }
+        }
+        return result;
+    }
+
+    private DataSet loadTile(final Tile tile, final SearchFilter filter, final SearchListener listener)
+            throws DirectionOfFlowServiceException {
+        DataSet result = diskCache.read(tile, filter, false);
+        if (result == null) {
+            // the listener receives the data while it is decoded
+            result = searchTile(tile, filter, listener);
+            diskCache.write(tile, filter, result);
+        } else if (listener != null) {
+            listener.dataLoaded(result);
+        }
+        cache.put(tile, filter, result);
+        return result;
+    }
+
+    /*
+     * Road segments are returned for every zoom level above the maximum cluster zoom, so these levels share the same
+     * tiles. Clusters depend on the zoom level.
+     */
+    private int tileZoom(final int zoom) {
+        final int maxClusterZoom = Config.getInstance().getMaxClusterZoom();
+        return zoom > maxClusterZoom ? maxClusterZoom + 1 : zoom;
+    }
+
+    private DataSet searchTile(final Tile tile, final SearchFilter filter, final SearchListener listener)
+            throws DirectionOfFlowServiceException {
+        final String url = new HttpQueryBuilder(tile.getBoundingBox(), filter, tile.getZoom()).build(Constants.SEARCH);
+        final Root root;
+        HttpConnector connector = null;
         try {
-            response = new HttpConnector(url, HttpMethod.GET).read();
+            connector = new HttpConnector(url, HttpMethod.GET);
+            searchConnectors.add(connector);
+            root = connector.read(new SearchResponseReader(listener));
+            Main.debug(url + ": " + connector.getMetrics());
         } catch (final HttpConnectorException e) {
+            if (Thread.currentThread().isInterrupted()) {
+                throw new SearchAbortedException("Search aborted");
+            }
             throw new DirectionOfFlowServiceException(e);
+        } finally {
+            if (connector != null) {
+                searchConnectors.remove(connector);
+            }
         }
-        return buildRoot(response);
+        verifyResponseStatus(root);
+        return new DataSet(root.getClusters(), root.getRoadSegments());
     }
 
+
     private Root executePost(final String url, final String content) throws DirectionOfFlowServiceException {
         String response = null;
         try {
             final HttpConnector connector = new HttpConnector(url, HttpMethod.POST);
-            connector.write(content);
+            connector.write(content, Config.getInstance().isRequestCompression());
             response = connector.read();
         } catch (final HttpConnectorException e) {
             throw new DirectionOfFlowServiceException(e);
@@ -130,14 +376,15 @@ public class DirectionOfFlowService {
 
     private Root buildRoot(final String response) throws DirectionOfFlowServiceException {
         Root root = null;
-        if (response != null) {
+        if (response != null && !response.trim().isEmpty()) {
             try {
                 root = gson.fromJson(response, Root.class);
             } catch (final JsonSyntaxException e) {
                 throw new DirectionOfFlowServiceException(e);
             }
         }
-        return root;
+        // a response without content is read as an empty result
+        return root != null ? root : new Root(null, null, null);
     }
 
     private void verifyResponseStatus(final Root root) throws DirectionOfFlowServiceException {
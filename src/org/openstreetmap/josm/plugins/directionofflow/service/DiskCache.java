@@ -0,0 +1,267 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.plugins.directionofflow.argument.SearchFilter;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Cluster;
+import org.openstreetmap.josm.plugins.directionofflow.entity.ConfidenceLevel;
+import org.openstreetmap.josm.plugins.directionofflow.entity.DataSet;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadType;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Status;
+
+
+/**
+ * Persistent cache of the search results. Every tile is stored in a separate gzip compressed binary file, together
+ * with the time it was retrieved and the fingerprint of the filter used for retrieving it.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+final class DiskCache {
+
+    private static final int MAGIC = 0x444F4643;
+    private static final int VERSION = 2;
+    private static final String EXTENSION = ".bin";
+    private static final String TMP_EXTENSION = ".tmp";
+    private static final char SEPARATOR = '_';
+    private static final int NULL_ORDINAL = -1;
+
+    /* files older than this are deleted */
+    private static final long MAX_AGE = 7L * 24 * 60 * 60 * 1000;
+
+    private final File directory;
+    private final long ttl;
+
+
+    /**
+     * Builds a new disk cache in the given directory. Files older than a week are deleted.
+     *
+     * @param directory the directory holding the cache files
+     * @param ttl the time, in milliseconds, after which a cached tile is considered expired
+     */
+    DiskCache(final File directory, final long ttl) {
+        this.directory = directory;
+        this.ttl = ttl;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            Main.warn("Could not create cache directory " + directory);
+        }
+        prune(MAX_AGE);
+    }
+
+
+    /**
+     * Reads the result of the given tile and filter. The method returns null if there is no such result, if the result
+     * cannot be read, or if the result expired and {@code allowExpired} is false.
+     *
+     * @param tile a {@code Tile}
+     * @param filter the {@code SearchFilter} used for obtaining the result
+     * @param allowExpired if true expired results are also returned
+     * @return a {@code DataSet}
+     */
+    DataSet read(final Tile tile, final SearchFilter filter, final boolean allowExpired) {
+        final String fingerprint = fingerprint(filter);
+        final File file = file(tile, fingerprint);
+        DataSet result = null;
+        if (file.isFile()) {
+            try (DataInputStream in = new DataInputStream(
+                    new BufferedInputStream(new GZIPInputStream(new FileInputStream(file))))) {
+                if (in.readInt() == MAGIC && in.readInt() == VERSION) {
+                    final long timestamp = in.readLong();
+                    final boolean expired = System.currentTimeMillis() - timestamp > ttl;
+                    if (fingerprint.equals(in.readUTF()) && (allowExpired || !expired)) {
+                        result = readDataSet(in);
+                    }
+                }
+            } catch (final IOException e) {
+                Main.warn("Could not read cache file " + file + ": " + e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes the given result to the cache. The file is written under a temporary name and renamed at the end, so that
+     * a failed write does not leave a partial tile behind.
+     *
+     * @param tile a {@code Tile}
+     * @param filter the {@code SearchFilter} used for obtaining the result
+     * @param dataSet the {@code DataSet} returned by the service for the given tile and filter
+     */
+    void write(final Tile tile, final SearchFilter filter, final DataSet dataSet) {
+        final String fingerprint = fingerprint(filter);
+        final File file = file(tile, fingerprint);
+        final File tmpFile = new File(directory, file.getName() + TMP_EXTENSION);
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new GZIPOutputStream(new FileOutputStream(tmpFile))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(System.currentTimeMillis());
+            out.writeUTF(fingerprint);
+            writeDataSet(out, dataSet);
+        } catch (final IOException e) {
+            Main.warn("Could not write cache file " + file + ": " + e.getMessage());
+            tmpFile.delete();
+            return;
+        }
+        if ((file.exists() && !file.delete()) || !tmpFile.renameTo(file)) {
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * Deletes all the cached results.
+     */
+    void clear() {
+        prune(0);
+    }
+
+    private void prune(final long maxAge) {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            final long now = System.currentTimeMillis();
+            for (final File file : files) {
+                if (now - file.lastModified() >= maxAge) {
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    private File file(final Tile tile, final String fingerprint) {
+        final StringBuilder name = new StringBuilder();
+        name.append(tile.getZoom()).append(SEPARATOR).append(tile.getX()).append(SEPARATOR).append(tile.getY());
+        final CRC32 crc = new CRC32();
+        crc.update(fingerprint.getBytes());
+        name.append(SEPARATOR).append(Long.toHexString(crc.getValue())).append(EXTENSION);
+        return new File(directory, name.toString());
+    }
+
+    /*
+     * Returns a textual representation of the filter that does not depend on the current JVM, unlike
+     * SearchFilter#hashCode.
+     */
+    private static String fingerprint(final SearchFilter filter) {
+        final StringBuilder result = new StringBuilder();
+        if (filter != null) {
+            result.append(filter.getStatus() != null ? filter.getStatus().name() : "");
+            if (filter.getConfidenceLevels() != null) {
+                for (final ConfidenceLevel confidenceLevel : filter.getConfidenceLevels()) {
+                    result.append(SEPARATOR).append(confidenceLevel.name());
+                }
+            }
+        }
+        return result.toString();
+    }
+
+
+    /* binary format */
+
+    private static void writeDataSet(final DataOutputStream out, final DataSet dataSet) throws IOException {
+        out.writeInt(dataSet.getClusters().size());
+        for (final Cluster cluster : dataSet.getClusters()) {
+            writeLatLon(out, cluster.getPoint());
+            out.writeInt(cluster.getSize());
+        }
+        out.writeInt(dataSet.getRoadSegments().size());
+        for (final RoadSegment roadSegment : dataSet.getRoadSegments()) {
+            out.writeLong(roadSegment.getWayId());
+            out.writeLong(roadSegment.getFromNodeId());
+            out.writeLong(roadSegment.getToNodeId());
+            out.writeBoolean(roadSegment.getNumberOfTrips() != null);
+            if (roadSegment.getNumberOfTrips() != null) {
+                out.writeInt(roadSegment.getNumberOfTrips());
+            }
+            out.writeBoolean(roadSegment.getPercentOfTrips() != null);
+            if (roadSegment.getPercentOfTrips() != null) {
+                out.writeDouble(roadSegment.getPercentOfTrips());
+            }
+            writeOrdinal(out, roadSegment.getConfidenceLevel());
+            writeOrdinal(out, roadSegment.getStatus());
+            writeOrdinal(out, roadSegment.getType());
+            out.writeInt(roadSegment.getPointCount());
+            for (int i = 0; i < roadSegment.getPointCount(); i++) {
+                out.writeInt(roadSegment.getFixedLat(i));
+                out.writeInt(roadSegment.getFixedLon(i));
+            }
+        }
+    }
+
+    private static DataSet readDataSet(final DataInputStream in) throws IOException {
+        final int clusterCount = in.readInt();
+        final List<Cluster> clusters = new ArrayList<>(clusterCount);
+        for (int i = 0; i < clusterCount; i++) {
+            final LatLon point = readLatLon(in);
+            clusters.add(new Cluster(point, in.readInt()));
+        }
+        final int segmentCount = in.readInt();
+        final List<RoadSegment> roadSegments = new ArrayList<>(segmentCount);
+        for (int i = 0; i < segmentCount; i++) {
+            final long wayId = in.readLong();
+            final long fromNodeId = in.readLong();
+            final long toNodeId = in.readLong();
+            final Integer numberOfTrips = in.readBoolean() ? in.readInt() : null;
+            final Double percentOfTrips = in.readBoolean() ? in.readDouble() : null;
+            final ConfidenceLevel confidenceLevel = readOrdinal(in, ConfidenceLevel.values());
+            final Status status = readOrdinal(in, Status.values());
+            final RoadType type = readOrdinal(in, RoadType.values());
+            final int[] coordinates = new int[2 * in.readInt()];
+            for (int j = 0; j < coordinates.length; j++) {
+                coordinates[j] = in.readInt();
+            }
+            roadSegments.add(new RoadSegment(wayId, fromNodeId, toNodeId, numberOfTrips, percentOfTrips,
+                    confidenceLevel, coordinates, status, type));
+        }
+        return new DataSet(clusters, roadSegments);
+    }
+
+    private static void writeLatLon(final DataOutputStream out, final LatLon latLon) throws IOException {
+        out.writeDouble(latLon.lat());
+        out.writeDouble(latLon.lon());
+    }
+
+    private static LatLon readLatLon(final DataInputStream in) throws IOException {
+        final double lat = in.readDouble();
+        return new LatLon(lat, in.readDouble());
+    }
+
+    private static void writeOrdinal(final DataOutputStream out, final Enum<?> value) throws IOException {
+        out.writeByte(value != null ? value.ordinal() : NULL_ORDINAL);
+    }
+
+    private static <T extends Enum<T>> T readOrdinal(final DataInputStream in, final T[] values) throws IOException {
+        final int ordinal = in.readByte();
+        if (ordinal < NULL_ORDINAL || ordinal >= values.length) {
+            throw new IOException("Invalid ordinal " + ordinal);
+        }
+        return ordinal == NULL_ORDINAL ? null : values[ordinal];
+    }
+}
\ No newline at end of file
@@ -0,0 +1,37 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.service;
+
+
+/**
+ * Signals that a search operation was aborted because its result is no longer needed.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+public class SearchAbortedException extends DirectionOfFlowServiceException {
+
+    private static final long serialVersionUID = 2793473612473816295L;
+
+    /**
+     * Builds a new object with the given argument.
+     *
+     * @param msg the message of the exception
+     */
+    public SearchAbortedException(final String msg) {
+        super(msg);
+    }
+}
\ No newline at end of file
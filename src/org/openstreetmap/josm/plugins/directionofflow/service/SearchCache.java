@@ -0,0 +1,153 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.service;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.openstreetmap.josm.plugins.directionofflow.argument.SearchFilter;
+import org.openstreetmap.josm.plugins.directionofflow.entity.DataSet;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+
+
+/**
+ * In-memory cache of the search results. The results are stored per {@code Tile} and {@code SearchFilter}; if the
+ * estimated size of the stored results exceeds the configured budget, the least recently used tiles are evicted.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+final class SearchCache {
+
+    /* rough estimation of the heap used by the cached objects, in bytes */
+    private static final long ENTRY_SIZE = 128;
+    private static final long CLUSTER_SIZE = 64;
+    private static final long SEGMENT_SIZE = 96;
+    private static final long POINT_SIZE = 12;
+
+    private final long maxSize;
+    private long size;
+    private final Map<Key, Entry> map;
+
+
+    /**
+     * Builds a new cache with the given budget.
+     *
+     * @param maxSize the maximum number of bytes the cached results may occupy
+     */
+    SearchCache(final long maxSize) {
+        this.maxSize = maxSize;
+        this.map = new LinkedHashMap<>(16, 0.75F, true);
+    }
+
+
+    /**
+     * Returns the cached result of the given tile and filter. The method returns null if there is no such result.
+     *
+     * @param tile a {@code Tile}
+     * @param filter the {@code SearchFilter} used for obtaining the result
+     * @return a {@code DataSet}
+     */
+    synchronized DataSet get(final Tile tile, final SearchFilter filter) {
+        final Entry entry = map.get(new Key(tile, filter));
+        return entry != null ? entry.dataSet : null;
+    }
+
+    /**
+     * Adds the given result to the cache. If the budget is exceeded the least recently used results are evicted.
+     *
+     * @param tile a {@code Tile}
+     * @param filter the {@code SearchFilter} used for obtaining the result
+     * @param dataSet the {@code DataSet} returned by the service for the given tile and filter
+     */
+    synchronized void put(final Tile tile, final SearchFilter filter, final DataSet dataSet) {
+        final long entrySize = estimateSize(dataSet);
+        if (entrySize <= maxSize) {
+            final Entry old = map.put(new Key(tile, filter), new Entry(dataSet, entrySize));
+            if (old != null) {
+                size -= old.size;
+            }
+            size += entrySize;
+            final Iterator<Entry> iterator = map.values().iterator();
+            while (size > maxSize && iterator.hasNext()) {
+                size -= iterator.next().size;
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all the cached results.
+     */
+    synchronized void clear() {
+        map.clear();
+        size = 0;
+    }
+
+    private static long estimateSize(final DataSet dataSet) {
+        long result = ENTRY_SIZE + dataSet.getClusters().size() * CLUSTER_SIZE;
+        for (final RoadSegment roadSegment : dataSet.getRoadSegments()) {
+            result += SEGMENT_SIZE + roadSegment.getPointCount() * POINT_SIZE;
+        }
+        return result;
+    }
+
+
+    private static final class Key {
+
+        private final Tile tile;
+        private final SearchFilter filter;
+
+        private Key(final Tile tile, final SearchFilter filter) {
+            this.tile = tile;
+            this.filter = filter;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + tile.hashCode();
+            result = prime * result + ((filter == null) ? 0 : filter.hashCode());
+            return result;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            boolean result = false;
+            if (this == obj) {
+                result = true;
+            } else if (obj instanceof Key) {
+                final Key other = (Key) obj;
+                result = tile.equals(other.tile)
+                        && (filter == null ? other.filter == null : filter.equals(other.filter));
+            }
+            return result;
+        }
+    }
+
+
+    private static final class Entry {
+
+        private final DataSet dataSet;
+        private final long size;
+
+        private Entry(final DataSet dataSet, final long size) {
+            this.dataSet = dataSet;
+            this.size = size;
+        }
+    }
+}
\ No newline at end of file
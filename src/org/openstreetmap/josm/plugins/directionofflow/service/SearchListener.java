@@ -0,0 +1,37 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.service;
+
+import org.openstreetmap.josm.plugins.directionofflow.entity.DataSet;
+
+
+/**
+ * Receives the results of a search operation in parts, as they become available.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+public interface SearchListener {
+
+    /**
+     * Invoked when a part of the searched data is available: either the data of a cached tile, or a batch of
+     * clusters/road segments decoded from a service response. The method may be invoked concurrently from several
+     * threads.
+     *
+     * @param dataSet a {@code DataSet} containing the loaded clusters/road segments
+     */
+    void dataLoaded(DataSet dataSet);
+}
\ No newline at end of file
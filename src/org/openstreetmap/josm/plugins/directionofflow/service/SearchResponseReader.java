@@ -0,0 +1,351 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Cluster;
+import org.openstreetmap.josm.plugins.directionofflow.entity.ConfidenceLevel;
+import org.openstreetmap.josm.plugins.directionofflow.entity.DataSet;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadType;
+import org.openstreetmap.josm.plugins.directionofflow.entity.Status;
+import org.openstreetmap.josm.plugins.directionofflow.service.entity.Root;
+import org.openstreetmap.josm.plugins.directionofflow.service.entity.RootStatus;
+import org.openstreetmap.josm.plugins.directionofflow.util.http.HttpUtil;
+import org.openstreetmap.josm.plugins.directionofflow.util.http.ResponseHandler;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+
+/**
+ * Reads the response of the search method directly from the response stream. The clusters and road segments are
+ * built while the content is parsed, without an intermediate string or JSON tree. Unknown attributes are skipped.
+ * If a listener is given, the decoded clusters and road segments are also passed to it in batches, before the whole
+ * response was read; the data following an error status is not reported. Reading stops with an
+ * {@code InterruptedIOException} if the reading thread is interrupted. A response without content is read as an empty
+ * result.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+class SearchResponseReader implements ResponseHandler<Root> {
+
+    /* root attributes */
+    private static final String STATUS = "status";
+    private static final String CLUSTERS = "clusters";
+    private static final String ROAD_SEGMENTS = "roadSegments";
+
+    /* status attributes */
+    private static final String API_CODE = "apiCode";
+    private static final String API_MESSAGE = "apiMessage";
+    private static final String HTTP_CODE = "httpCode";
+    private static final String HTTP_MESSAGE = "httpMessage";
+
+    /* cluster attributes */
+    private static final String POINT = "point";
+    private static final String SIZE = "size";
+
+    /* road segment attributes */
+    private static final String WAY_ID = "wayId";
+    private static final String FROM_NODE_ID = "fromNodeId";
+    private static final String TO_NODE_ID = "toNodeId";
+    private static final String NUMBER_OF_TRIPS = "numberOfTrips";
+    private static final String PERCENT_OF_TRIPS = "percentOfTrips";
+    private static final String CONFIDENCE_LEVEL = "confidenceLevel";
+    private static final String POINTS = "points";
+    private static final String TYPE = "type";
+
+    /* point attributes */
+    private static final String LATITUDE = "lat";
+    private static final String LONGITUDE = "lon";
+
+    /* initial capacity of the coordinate buffer, in (latitude, longitude) pairs */
+    private static final int POINT_CAPACITY = 16;
+
+    /* number of clusters/road segments passed to the listener at once */
+    private static final int BATCH_SIZE = 100;
+
+    private final SearchListener listener;
+
+    /* set if the response has an error status; the data of an error response is not passed to the listener */
+    private boolean errorStatus;
+
+
+    /**
+     * Builds a new reader that does not report the decoded data in batches.
+     */
+    SearchResponseReader() {
+        this(null);
+    }
+
+    /**
+     * Builds a new reader that reports the decoded data to the given listener.
+     *
+     * @param listener a {@code SearchListener}, may be null
+     */
+    SearchResponseReader(final SearchListener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public Root handle(final InputStream input) throws IOException {
+        if (input == null) {
+            // the response has no content
+            return new Root(null, null, null);
+        }
+        try (JsonReader reader = new JsonReader(new InputStreamReader(input, HttpUtil.ENCODING))) {
+            return readRoot(reader);
+        } catch (final IllegalStateException | NumberFormatException e) {
+            // thrown by the reader if the content does not have the expected structure
+            throw new IOException(e);
+        }
+    }
+
+    private Root readRoot(final JsonReader reader) throws IOException {
+        RootStatus status = null;
+        List<Cluster> clusters = null;
+        List<RoadSegment> roadSegments = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (STATUS.equals(name)) {
+                status = readStatus(reader);
+            } else if (CLUSTERS.equals(name)) {
+                clusters = readClusters(reader);
+            } else if (ROAD_SEGMENTS.equals(name)) {
+                roadSegments = readRoadSegments(reader);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Root(status, clusters, roadSegments);
+    }
+
+    private RootStatus readStatus(final JsonReader reader) throws IOException {
+        Integer apiCode = null;
+        String apiMessage = null;
+        Integer httpCode = null;
+        String httpMessage = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (API_CODE.equals(name)) {
+                apiCode = reader.nextInt();
+            } else if (API_MESSAGE.equals(name)) {
+                apiMessage = reader.nextString();
+            } else if (HTTP_CODE.equals(name)) {
+                httpCode = reader.nextInt();
+            } else if (HTTP_MESSAGE.equals(name)) {
+                httpMessage = reader.nextString();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        errorStatus = httpCode != null && httpCode != HttpURLConnection.HTTP_OK;
+        return new RootStatus(apiCode, apiMessage, httpCode, httpMessage);
+    }
+
+    private List<Cluster> readClusters(final JsonReader reader) throws IOException {
+        final List<Cluster> clusters = new ArrayList<>();
+        int reported = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            checkInterrupted();
+            clusters.add(readCluster(reader));
+            if (clusters.size() - reported == BATCH_SIZE) {
+                reported = reportClusters(clusters, reported);
+            }
+        }
+        reader.endArray();
+        reportClusters(clusters, reported);
+        return clusters;
+    }
+
+    private Cluster readCluster(final JsonReader reader) throws IOException {
+        LatLon point = null;
+        Integer size = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (POINT.equals(name)) {
+                point = readPoint(reader);
+            } else if (SIZE.equals(name)) {
+                size = reader.nextInt();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Cluster(point, size);
+    }
+
+    private List<RoadSegment> readRoadSegments(final JsonReader reader) throws IOException {
+        final List<RoadSegment> roadSegments = new ArrayList<>();
+        int reported = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            checkInterrupted();
+            roadSegments.add(readRoadSegment(reader));
+            if (roadSegments.size() - reported == BATCH_SIZE) {
+                reported = reportRoadSegments(roadSegments, reported);
+            }
+        }
+        reader.endArray();
+        reportRoadSegments(roadSegments, reported);
+        return roadSegments;
+    }
+
+    /* passes the clusters decoded since the last report to the listener; returns the number of reported clusters */
+    private int reportClusters(final List<Cluster> clusters, final int reported) {
+        if (listener != null && !errorStatus && clusters.size() > reported) {
+            listener.dataLoaded(new DataSet(new ArrayList<>(clusters.subList(reported, clusters.size())), null));
+        }
+        return clusters.size();
+    }
+
+    /* passes the segments decoded since the last report to the listener; returns the number of reported segments */
+    private int reportRoadSegments(final List<RoadSegment> roadSegments, final int reported) {
+        if (listener != null && !errorStatus && roadSegments.size() > reported) {
+            listener.dataLoaded(
+                    new DataSet(null, new ArrayList<>(roadSegments.subList(reported, roadSegments.size()))));
+        }
+        return roadSegments.size();
+    }
+
+    private static void checkInterrupted() throws InterruptedIOException {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new InterruptedIOException("Search aborted");
+        }
+    }
+
+    private RoadSegment readRoadSegment(final JsonReader reader) throws IOException {
+        long wayId = 0;
+        long fromNodeId = 0;
+        long toNodeId = 0;
+        Integer numberOfTrips = null;
+        Double percentOfTrips = null;
+        ConfidenceLevel confidenceLevel = null;
+        int[] coordinates = null;
+        Status status = null;
+        RoadType type = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+            } else if (WAY_ID.equals(name)) {
+                wayId = reader.nextLong();
+            } else if (FROM_NODE_ID.equals(name)) {
+                fromNodeId = reader.nextLong();
+            } else if (TO_NODE_ID.equals(name)) {
+                toNodeId = reader.nextLong();
+            } else if (NUMBER_OF_TRIPS.equals(name)) {
+                numberOfTrips = reader.nextInt();
+            } else if (PERCENT_OF_TRIPS.equals(name)) {
+                percentOfTrips = reader.nextDouble();
+            } else if (CONFIDENCE_LEVEL.equals(name)) {
+                confidenceLevel = readEnum(reader, ConfidenceLevel.class);
+            } else if (POINTS.equals(name)) {
+                coordinates = readCoordinates(reader);
+            } else if (STATUS.equals(name)) {
+                status = readEnum(reader, Status.class);
+            } else if (TYPE.equals(name)) {
+                type = readEnum(reader, RoadType.class);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new RoadSegment(wayId, fromNodeId, toNodeId, numberOfTrips, percentOfTrips, confidenceLevel,
+                coordinates, status, type);
+    }
+
+    /* reads the points directly into a fixed-point coordinate array, without building LatLon objects */
+    private int[] readCoordinates(final JsonReader reader) throws IOException {
+        int[] coordinates = new int[2 * POINT_CAPACITY];
+        int size = 0;
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (size == coordinates.length) {
+                coordinates = Arrays.copyOf(coordinates, 2 * size);
+            }
+            int lat = 0;
+            int lon = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                final String name = reader.nextName();
+                if (LATITUDE.equals(name)) {
+                    lat = RoadSegment.toFixedPoint(reader.nextDouble());
+                } else if (LONGITUDE.equals(name)) {
+                    lon = RoadSegment.toFixedPoint(reader.nextDouble());
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.endObject();
+            coordinates[size++] = lat;
+            coordinates[size++] = lon;
+        }
+        reader.endArray();
+        return size == coordinates.length ? coordinates : Arrays.copyOf(coordinates, size);
+    }
+
+    private LatLon readPoint(final JsonReader reader) throws IOException {
+        double lat = 0;
+        double lon = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            final String name = reader.nextName();
+            if (LATITUDE.equals(name)) {
+                lat = reader.nextDouble();
+            } else if (LONGITUDE.equals(name)) {
+                lon = reader.nextDouble();
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new LatLon(lat, lon);
+    }
+
+    /* unknown values are read as null, similarly to the default Gson enum handling */
+    private <T extends Enum<T>> T readEnum(final JsonReader reader, final Class<T> type) throws IOException {
+        final String value = reader.nextString();
+        T result = null;
+        try {
+            result = Enum.valueOf(type, value);
+        } catch (final IllegalArgumentException e) {
+            result = null;
+        }
+        return result;
+    }
+}
\ No newline at end of file
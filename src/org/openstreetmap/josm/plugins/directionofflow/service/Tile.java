@@ -0,0 +1,158 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openstreetmap.josm.plugins.directionofflow.argument.BoundingBox;
+
+
+/**
+ * Defines a cell of the regular latitude/longitude grid used for splitting the search area. At zoom level z a tile
+ * spans {@code 1024/2^z} degrees in both directions, the same reference span that is used for computing the zoom level.
+ *
+ * @author Beata
+ * @version $Revision: 2 $
+ */
+final class Tile {
+
+    private static final double WORLD_SPAN = 1024.0;
+    private static final double MIN_LAT = -90.0;
+    private static final double MAX_LAT = 90.0;
+    private static final double MIN_LON = -180.0;
+    private static final double MAX_LON = 180.0;
+
+    private final int zoom;
+    private final int x;
+    private final int y;
+
+
+    /**
+     * Builds a new tile with the given arguments.
+     *
+     * @param zoom the zoom level of the tile
+     * @param x the column of the tile, counted from the west
+     * @param y the row of the tile, counted from the south
+     */
+    Tile(final int zoom, final int x, final int y) {
+        this.zoom = zoom;
+        this.x = x;
+        this.y = y;
+    }
+
+
+    /**
+     * Returns the tiles that cover the given bounding box at the given zoom level.
+     *
+     * @param bbox a {@code BoundingBox}
+     * @param zoom the zoom level of the tiles
+     * @return a list of {@code Tile}s
+     */
+    static List<Tile> cover(final BoundingBox bbox, final int zoom) {
+        final double span = span(zoom);
+        final int minX = index(bbox.getWest() - MIN_LON, span, MAX_LON - MIN_LON);
+        final int maxX = index(bbox.getEast() - MIN_LON, span, MAX_LON - MIN_LON);
+        final int minY = index(bbox.getSouth() - MIN_LAT, span, MAX_LAT - MIN_LAT);
+        final int maxY = index(bbox.getNorth() - MIN_LAT, span, MAX_LAT - MIN_LAT);
+        final List<Tile> tiles = new ArrayList<>((maxX - minX + 1) * (maxY - minY + 1));
+        for (int tileY = minY; tileY <= maxY; tileY++) {
+            for (int tileX = minX; tileX <= maxX; tileX++) {
+                tiles.add(new Tile(zoom, tileX, tileY));
+            }
+        }
+        return tiles;
+    }
+
+    private static double span(final int zoom) {
+        return WORLD_SPAN / (1 << zoom);
+    }
+
+    private static int index(final double offset, final double span, final double range) {
+        return Math.max(0, Math.min(maxIndex(span, range), (int) Math.floor(offset / span)));
+    }
+
+    private static int maxIndex(final double span, final double range) {
+        return (int) Math.ceil(range / span) - 1;
+    }
+
+    /**
+     * Returns the tiles of the given zoom level that cover this tile. The grid of a zoom level subdivides the grid of
+     * the lower zoom levels, therefore the returned tiles cover exactly the area of this tile.
+     *
+     * @param childZoom a zoom level, greater than or equal to the zoom level of this tile
+     * @return a list of {@code Tile}s
+     */
+    List<Tile> children(final int childZoom) {
+        final int factor = 1 << (childZoom - zoom);
+        final double span = span(childZoom);
+        final int maxX = Math.min((x + 1) * factor - 1, maxIndex(span, MAX_LON - MIN_LON));
+        final int maxY = Math.min((y + 1) * factor - 1, maxIndex(span, MAX_LAT - MIN_LAT));
+        final List<Tile> tiles = new ArrayList<>();
+        for (int tileY = y * factor; tileY <= maxY; tileY++) {
+            for (int tileX = x * factor; tileX <= maxX; tileX++) {
+                tiles.add(new Tile(childZoom, tileX, tileY));
+            }
+        }
+        return tiles;
+    }
+
+    /**
+     * Returns the area covered by this tile.
+     *
+     * @return a {@code BoundingBox}
+     */
+    BoundingBox getBoundingBox() {
+        final double span = span(zoom);
+        final double west = MIN_LON + x * span;
+        final double south = MIN_LAT + y * span;
+        return new BoundingBox(south + span, south, west + span, west);
+    }
+
+    int getZoom() {
+        return zoom;
+    }
+
+    int getX() {
+        return x;
+    }
+
+    int getY() {
+        return y;
+    }
+
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + zoom;
+        result = prime * result + x;
+        result = prime * result + y;
+        return result;
+    }
+
+    @Override
+    public boolean equals(final Object obj) {
+        boolean result = false;
+        if (this == obj) {
+            result = true;
+        } else if (obj instanceof Tile) {
+            final Tile other = (Tile) obj;
+            result = zoom == other.getZoom() && x == other.getX() && y == other.getY();
+        }
+        return result;
+    }
+}
\ No newline at end of file
@@ -33,7 +33,7 @@ public class CommentRoot {
     private final String username;
     private final String text;
     private final Status status;
-    private final List<RoadSegment> roadSegments;
+    private final List<RoadSegmentId> roadSegments;
 
 
     /**
@@ -49,7 +49,7 @@ public class CommentRoot {
         this.roadSegments = new ArrayList<>();
         for (final RoadSegment roadSegment : roadSegments) {
             this.roadSegments.add(
-                    new RoadSegment(roadSegment.getWayId(), roadSegment.getFromNodeId(), roadSegment.getToNodeId()));
+                    new RoadSegmentId(roadSegment.getWayId(), roadSegment.getFromNodeId(), roadSegment.getToNodeId()));
         }
     }
 
@@ -66,7 +66,36 @@ public class CommentRoot {
         return status;
     }
 
-    public List<RoadSegment> getRoadSegments() {
+    public List<RoadSegmentId> getRoadSegments() {
         return roadSegments;
     }
+
+
+    /**
+     * Identifies a road segment in the body of the comment operation.
+     */
+    public static class RoadSegmentId {
+
+        private final long wayId;
+        private final long fromNodeId;
+        private final long toNodeId;
+
+        private RoadSegmentId(final long wayId, final long fromNodeId, final long toNodeId) {
+            this.wayId = wayId;
+            this.fromNodeId = fromNodeId;
+            this.toNodeId = toNodeId;
+        }
+
+        public long getWayId() {
+            return wayId;
+        }
+
+        public long getFromNodeId() {
+            return fromNodeId;
+        }
+
+        public long getToNodeId() {
+            return toNodeId;
+        }
+    }
 }
\ No newline at end of file
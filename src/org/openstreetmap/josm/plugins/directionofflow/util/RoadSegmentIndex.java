@@ -0,0 +1,154 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+
+
+/**
+ * Uniform grid index over the bounding boxes of a list of road segments. Every grid cell holds the indexes of the
+ * segments whose bounding box intersects the cell, therefore a rectangle query only needs to check the segments from
+ * the cells covered by the rectangle. The index is immutable; it is rebuilt whenever the data set changes.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+public final class RoadSegmentIndex {
+
+    /* the maximum number of cells per dimension */
+    private static final int MAX_CELLS = 512;
+
+    private final List<RoadSegment> roadSegments;
+    private final int minLat;
+    private final int minLon;
+    private final double cellHeight;
+    private final double cellWidth;
+    private final int rows;
+    private final int cols;
+
+    /* cell contents in compressed form: the segments of cell i are entries[cellStart[i]..cellStart[i+1]) */
+    private final int[] cellStart;
+    private final int[] entries;
+
+    /* used for reporting a segment only once per query */
+    private final int[] visited;
+    private int queryId;
+
+
+    /**
+     * Builds a new index over the given road segments.
+     *
+     * @param roadSegments a list of {@code RoadSegment}s
+     */
+    public RoadSegmentIndex(final List<RoadSegment> roadSegments) {
+        this.roadSegments = roadSegments;
+        int south = Integer.MAX_VALUE;
+        int west = Integer.MAX_VALUE;
+        int north = Integer.MIN_VALUE;
+        int east = Integer.MIN_VALUE;
+        for (final RoadSegment roadSegment : roadSegments) {
+            if (roadSegment.getPointCount() > 0) {
+                south = Math.min(south, roadSegment.getMinLat());
+                west = Math.min(west, roadSegment.getMinLon());
+                north = Math.max(north, roadSegment.getMaxLat());
+                east = Math.max(east, roadSegment.getMaxLon());
+            }
+        }
+        final int size = Math.max(1, Math.min(MAX_CELLS, (int) Math.sqrt(roadSegments.size())));
+        this.rows = south <= north ? size : 1;
+        this.cols = rows;
+        this.minLat = south <= north ? south : 0;
+        this.minLon = south <= north ? west : 0;
+        this.cellHeight = south <= north ? Math.max(1.0, ((double) north - south + 1) / rows) : 1.0;
+        this.cellWidth = south <= north ? Math.max(1.0, ((double) east - west + 1) / cols) : 1.0;
+
+        // count the entries of every cell, then fill them in
+        this.cellStart = new int[rows * cols + 1];
+        for (final RoadSegment roadSegment : roadSegments) {
+            if (roadSegment.getPointCount() > 0) {
+                for (int row = row(roadSegment.getMinLat()); row <= row(roadSegment.getMaxLat()); row++) {
+                    for (int col = col(roadSegment.getMinLon()); col <= col(roadSegment.getMaxLon()); col++) {
+                        cellStart[row * cols + col + 1]++;
+                    }
+                }
+            }
+        }
+        for (int i = 1; i < cellStart.length; i++) {
+            cellStart[i] += cellStart[i - 1];
+        }
+        this.entries = new int[cellStart[cellStart.length - 1]];
+        final int[] next = new int[rows * cols];
+        System.arraycopy(cellStart, 0, next, 0, next.length);
+        for (int i = 0; i < roadSegments.size(); i++) {
+            final RoadSegment roadSegment = roadSegments.get(i);
+            if (roadSegment.getPointCount() > 0) {
+                for (int row = row(roadSegment.getMinLat()); row <= row(roadSegment.getMaxLat()); row++) {
+                    for (int col = col(roadSegment.getMinLon()); col <= col(roadSegment.getMaxLon()); col++) {
+                        entries[next[row * cols + col]++] = i;
+                    }
+                }
+            }
+        }
+        this.visited = new int[roadSegments.size()];
+    }
+
+
+    /**
+     * Returns the road segments whose bounding box intersects the given rectangle.
+     *
+     * @param south the southern limit of the rectangle, in degrees
+     * @param west the western limit of the rectangle, in degrees
+     * @param north the northern limit of the rectangle, in degrees
+     * @param east the eastern limit of the rectangle, in degrees
+     * @return a list of {@code RoadSegment}s
+     */
+    public synchronized List<RoadSegment> query(final double south, final double west, final double north,
+            final double east) {
+        final int fixedSouth = RoadSegment.toFixedPoint(south);
+        final int fixedWest = RoadSegment.toFixedPoint(west);
+        final int fixedNorth = RoadSegment.toFixedPoint(north);
+        final int fixedEast = RoadSegment.toFixedPoint(east);
+        final List<RoadSegment> result = new ArrayList<>();
+        queryId++;
+        for (int row = row(fixedSouth); row <= row(fixedNorth); row++) {
+            for (int col = col(fixedWest); col <= col(fixedEast); col++) {
+                final int cell = row * cols + col;
+                for (int i = cellStart[cell]; i < cellStart[cell + 1]; i++) {
+                    final int idx = entries[i];
+                    if (visited[idx] != queryId) {
+                        visited[idx] = queryId;
+                        final RoadSegment roadSegment = roadSegments.get(idx);
+                        if (roadSegment.getMinLat() <= fixedNorth && roadSegment.getMaxLat() >= fixedSouth
+                                && roadSegment.getMinLon() <= fixedEast && roadSegment.getMaxLon() >= fixedWest) {
+                            result.add(roadSegment);
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private int row(final int lat) {
+        return Math.max(0, Math.min(rows - 1, (int) ((lat - (double) minLat) / cellHeight)));
+    }
+
+    private int col(final int lon) {
+        return Math.max(0, Math.min(cols - 1, (int) ((lon - (double) minLon) / cellWidth)));
+    }
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.util;
+
+import org.openstreetmap.josm.Main;
+import org.openstreetmap.josm.data.coor.EastNorth;
+import org.openstreetmap.josm.data.coor.LatLon;
+import org.openstreetmap.josm.data.projection.Projection;
+import org.openstreetmap.josm.gui.NavigatableComponent;
+import org.openstreetmap.josm.plugins.directionofflow.entity.RoadSegment;
+
+
+/**
+ * Projects the points of road segments to screen coordinates. The screen coordinates are the projected coordinates
+ * divided by the scale, with the y axis pointing south, relative to a given origin. The coordinates of the last
+ * projected point are kept in this object, such that projecting a point does not build new objects if the current
+ * projection is the spherical Mercator projection used by default; other projections are applied through the JOSM
+ * projection API. An instance is meant to be used by a single thread, for building the paths of a single paint
+ * operation.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+public final class ScreenProjection {
+
+    private static final String MERCATOR_CODE = "EPSG:3857";
+    private static final double EARTH_RADIUS = 6378137.0;
+
+    /* null if the projection is computed directly */
+    private final Projection projection;
+    private final double scale;
+    private final double originX;
+    private final double originY;
+
+    private double x;
+    private double y;
+
+
+    /**
+     * Builds a new object projecting to the screen coordinates of the given map view.
+     *
+     * @param view the current {@code NavigatableComponent}, usually the {@code MapView}
+     */
+    public ScreenProjection(final NavigatableComponent view) {
+        this(view.getScale(), view.getCenter().east() / view.getScale() - view.getWidth() / 2.0,
+                -view.getCenter().north() / view.getScale() - view.getHeight() / 2.0);
+    }
+
+    /**
+     * Builds a new object projecting to screen coordinates relative to the given origin.
+     *
+     * @param scale the scale, in projected units per pixel
+     * @param originX the x coordinate of the origin, in pixels from the projection origin
+     * @param originY the y coordinate of the origin, in pixels from the projection origin, pointing south
+     */
+    public ScreenProjection(final double scale, final double originX, final double originY) {
+        final Projection current = Main.getProjection();
+        this.projection = MERCATOR_CODE.equals(current.toCode()) ? null : current;
+        this.scale = scale;
+        this.originX = originX;
+        this.originY = originY;
+    }
+
+
+    /**
+     * Projects the point with the given index of the given road segment. The result is returned by {@link #getX()}
+     * and {@link #getY()}.
+     *
+     * @param roadSegment a {@code RoadSegment}
+     * @param index the index of the point
+     */
+    public void project(final RoadSegment roadSegment, final int index) {
+        final double east;
+        final double north;
+        if (projection == null) {
+            east = EARTH_RADIUS * Math.toRadians(roadSegment.getLon(index));
+            north = EARTH_RADIUS
+                    * Math.log(Math.tan(Math.PI / 4 + Math.toRadians(roadSegment.getLat(index)) / 2));
+        } else {
+            final EastNorth point = projection.latlon2eastNorth(
+                    new LatLon(roadSegment.getLat(index), roadSegment.getLon(index)));
+            east = point.east();
+            north = point.north();
+        }
+        x = east / scale - originX;
+        y = -north / scale - originY;
+    }
+
+    /**
+     * Returns the x screen coordinate of the last projected point.
+     *
+     * @return a coordinate in pixels
+     */
+    public double getX() {
+        return x;
+    }
+
+    /**
+     * Returns the y screen coordinate of the last projected point.
+     *
+     * @return a coordinate in pixels
+     */
+    public double getY() {
+        return y;
+    }
+}
\ No newline at end of file
@@ -18,6 +18,7 @@ package org.openstreetmap.josm.plugins.directionofflow.util;
 import java.awt.Point;
 import java.awt.geom.Point2D;
 import java.util.List;
+import java.util.concurrent.ThreadFactory;
 import org.openstreetmap.josm.Main;
 import org.openstreetmap.josm.data.Bounds;
 import org.openstreetmap.josm.data.coor.LatLon;
@@ -41,6 +42,25 @@ public final class Util {
 
     private Util() {}
 
+    /**
+     * Returns a thread factory that builds daemon threads with the given name. The plugin's background threads must
+     * not prevent JOSM from exiting.
+     *
+     * @param name the name of the threads
+     * @return a {@code ThreadFactory}
+     */
+    public static ThreadFactory threadFactory(final String name) {
+        return new ThreadFactory() {
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+    }
+
     /**
      * Returns the zoom level based on the given bounds.
      *
@@ -53,17 +73,23 @@ public final class Util {
     }
 
     /**
-     * Returns the segment nearby the given point. If there is no road segment near the method returns null.
+     * Returns the segment nearby the given point. If there is no road segment near the method returns null. Only the
+     * segments whose bounding box is within the snap distance of the point are checked.
      *
-     * @param roadSegments a list of {@code RoadSegment}s
+     * @param index a {@code RoadSegmentIndex} built over the displayed road segments
      * @param point the location where the user clicked
      * @return a {@code RoadSegment}
      */
-    public static RoadSegment nearbyRoadSegment(final List<RoadSegment> roadSegments, final Point point) {
+    public static RoadSegment nearbyRoadSegment(final RoadSegmentIndex index, final Point point) {
+        final LatLon southWest = Main.map.mapView.getLatLon(point.getX() - SEG_DIST, point.getY() + SEG_DIST);
+        final LatLon northEast = Main.map.mapView.getLatLon(point.getX() + SEG_DIST, point.getY() - SEG_DIST);
+        final List<RoadSegment> candidates =
+                index.query(southWest.lat(), southWest.lon(), northEast.lat(), northEast.lon());
+        final ScreenProjection projection = new ScreenProjection(Main.map.mapView);
         RoadSegment result = null;
         double minDistance = Double.MAX_VALUE;
-        for (final RoadSegment roadSegment : roadSegments) {
-            final double distance = minDistance(roadSegment.getPoints(), point);
+        for (final RoadSegment roadSegment : candidates) {
+            final double distance = minDistance(projection, roadSegment, point);
             if (distance <= minDistance) {
                 minDistance = distance;
                 result = roadSegment;
@@ -75,27 +101,36 @@ public final class Util {
         return result;
     }
 
-    private static double minDistance(final List<LatLon> points, final Point point) {
+    private static double minDistance(final ScreenProjection projection, final RoadSegment roadSegment,
+            final Point point) {
         double minDistance = Double.MAX_VALUE;
-        for (int i = 0; i < points.size() - 1; i++) {
-            final Point start = Main.map.mapView.getPoint(points.get(i));
-            final Point end = Main.map.mapView.getPoint(points.get(i + 1));
-            final double distance = distance(point, start, end);
-            if (distance < minDistance) {
-                minDistance = distance;
+        if (roadSegment.getPointCount() > 0) {
+            // every point is projected once, the end of an edge is the start of the next one
+            projection.project(roadSegment, 0);
+            double startX = projection.getX();
+            double startY = projection.getY();
+            for (int i = 1; i < roadSegment.getPointCount(); i++) {
+                projection.project(roadSegment, i);
+                final double distance =
+                        distance(point.getX(), point.getY(), startX, startY, projection.getX(), projection.getY());
+                if (distance < minDistance) {
+                    minDistance = distance;
+                }
+                startX = projection.getX();
+                startY = projection.getY();
             }
         }
         return minDistance;
     }
 
-    private static double distance(final Point2D point, final Point2D start, final Point2D end) {
-        final double xD = end.getX() - start.getX();
-        final double yD = end.getY() - start.getY();
-        final double u =
-                ((point.getX() - start.getX()) * xD + (point.getY() - start.getY()) * yD) / (xD * xD + yD * yD);
-        final Point2D nearestPoint =
-                u < 0 ? start : ((u > 1) ? end : new Point2D.Double(start.getX() + u * xD, start.getY() + u * yD));
-        return nearestPoint.distance(point);
+    private static double distance(final double pointX, final double pointY, final double startX,
+            final double startY, final double endX, final double endY) {
+        final double xD = endX - startX;
+        final double yD = endY - startY;
+        final double u = ((pointX - startX) * xD + (pointY - startY) * yD) / (xD * xD + yD * yD);
+        final double nearestX = u < 0 ? startX : ((u > 1) ? endX : startX + u * xD);
+        final double nearestY = u < 0 ? startY : ((u > 1) ? endY : startY + u * yD);
+        return Point2D.distance(nearestX, nearestY, pointX, pointY);
     }
 
 }
\ No newline at end of file
@@ -28,11 +28,37 @@ public final class Config extends BaseConfig {
     private static final Config INSTANCE = new Config();
     private static final int SEARCH_DELAY = 600;
     private static final int MAX_CLUSTER_ZOOM = 14;
+    private static final int MEMORY_CACHE_SIZE = 16;
+    private static final long MB = 1024L * 1024L;
+    private static final int DISK_CACHE_TTL = 24;
+    private static final long HOUR = 60L * 60L * 1000L;
+    private static final int COMMENT_CACHE_SIZE = 256;
+    private static final int COMMENT_CACHE_TTL = 60;
+    private static final long SECOND = 1000L;
+    private static final int SEARCH_THREADS = 4;
+    private static final int COMMENT_BATCH_SIZE = 50;
+    private static final int COMMENT_BATCH_DELAY = 2000;
+    private static final int COMMENT_RETRY_DELAY = 1000;
+    private static final int COMMENT_RETRY_MAX_DELAY = 300000;
+    private static final int RENDER_SETTLE_DELAY = 250;
+    private static final int RENDER_FRAME_BUDGET = 16;
 
     private final String serviceUrl;
     private final String feedbackUrl;
     private int searchDelay;
+    private int searchThreads;
     private int maxClusterZoom;
+    private long memoryCacheSize;
+    private long diskCacheTtl;
+    private int commentCacheSize;
+    private long commentCacheTtl;
+    private final boolean requestCompression;
+    private int commentBatchSize;
+    private int commentBatchDelay;
+    private int commentRetryDelay;
+    private int commentRetryMaxDelay;
+    private int renderSettleDelay;
+    private int renderFrameBudget;
 
 
     private Config() {
@@ -62,6 +88,75 @@ public final class Config extends BaseConfig {
         } catch (final NumberFormatException e) {
             maxClusterZoom = MAX_CLUSTER_ZOOM;
         }
+
+        try {
+            searchThreads = Math.max(1, Integer.parseInt(readProperty("search.threads")));
+        } catch (final NumberFormatException e) {
+            searchThreads = SEARCH_THREADS;
+        }
+
+        try {
+            memoryCacheSize = Integer.parseInt(readProperty("cache.memory.size")) * MB;
+        } catch (final NumberFormatException e) {
+            memoryCacheSize = MEMORY_CACHE_SIZE * MB;
+        }
+
+        try {
+            diskCacheTtl = Integer.parseInt(readProperty("cache.disk.ttl")) * HOUR;
+        } catch (final NumberFormatException e) {
+            diskCacheTtl = DISK_CACHE_TTL * HOUR;
+        }
+
+        try {
+            commentCacheSize = Math.max(1, Integer.parseInt(readProperty("cache.comments.size")));
+        } catch (final NumberFormatException e) {
+            commentCacheSize = COMMENT_CACHE_SIZE;
+        }
+
+        try {
+            commentCacheTtl = Integer.parseInt(readProperty("cache.comments.ttl")) * SECOND;
+        } catch (final NumberFormatException e) {
+            commentCacheTtl = COMMENT_CACHE_TTL * SECOND;
+        }
+
+        requestCompression = Boolean.parseBoolean(readProperty("http.gzip.request"));
+
+        try {
+            commentBatchSize = Math.max(1, Integer.parseInt(readProperty("comment.batch.size")));
+        } catch (final NumberFormatException e) {
+            commentBatchSize = COMMENT_BATCH_SIZE;
+        }
+
+        try {
+            commentBatchDelay = Integer.parseInt(readProperty("comment.batch.delay"));
+        } catch (final NumberFormatException e) {
+            commentBatchDelay = COMMENT_BATCH_DELAY;
+        }
+
+        try {
+            commentRetryDelay = Math.max(1, Integer.parseInt(readProperty("comment.retry.delay")));
+        } catch (final NumberFormatException e) {
+            commentRetryDelay = COMMENT_RETRY_DELAY;
+        }
+
+        try {
+            commentRetryMaxDelay = Math.max(commentRetryDelay,
+                    Integer.parseInt(readProperty("comment.retry.delay.max")));
+        } catch (final NumberFormatException e) {
+            commentRetryMaxDelay = Math.max(commentRetryDelay, COMMENT_RETRY_MAX_DELAY);
+        }
+
+        try {
+            renderSettleDelay = Math.max(1, Integer.parseInt(readProperty("render.settle.delay")));
+        } catch (final NumberFormatException e) {
+            renderSettleDelay = RENDER_SETTLE_DELAY;
+        }
+
+        try {
+            renderFrameBudget = Math.max(0, Integer.parseInt(readProperty("render.frame.budget")));
+        } catch (final NumberFormatException e) {
+            renderFrameBudget = RENDER_FRAME_BUDGET;
+        }
     }
 
 
@@ -77,6 +172,51 @@ public final class Config extends BaseConfig {
         return maxClusterZoom;
     }
 
+    /**
+     * Returns the maximum number of tiles that are requested from the service concurrently.
+     *
+     * @return an integer value
+     */
+    public int getSearchThreads() {
+        return searchThreads;
+    }
+
+    /**
+     * Returns the maximum number of bytes the in-memory search cache may hold.
+     *
+     * @return a number of bytes
+     */
+    public long getMemoryCacheSize() {
+        return memoryCacheSize;
+    }
+
+    /**
+     * Returns the time after which a search result stored in the disk cache is considered expired.
+     *
+     * @return a number of milliseconds
+     */
+    public long getDiskCacheTtl() {
+        return diskCacheTtl;
+    }
+
+    /**
+     * Returns the maximum number of road segments whose comments are kept in memory.
+     *
+     * @return an integer value
+     */
+    public int getCommentCacheSize() {
+        return commentCacheSize;
+    }
+
+    /**
+     * Returns the time after which the cached comments of a road segment are revalidated with the service.
+     *
+     * @return a number of milliseconds
+     */
+    public long getCommentCacheTtl() {
+        return commentCacheTtl;
+    }
+
     public String getServiceUrl() {
         return serviceUrl;
     }
@@ -84,4 +224,70 @@ public final class Config extends BaseConfig {
     public String getFeedbackUrl() {
         return feedbackUrl;
     }
+
+    /**
+     * Returns the request compression flag. If the flag is set, the request bodies sent to the service are gzip
+     * compressed.
+     *
+     * @return a boolean value
+     */
+    public boolean isRequestCompression() {
+        return requestCompression;
+    }
+
+    /**
+     * Returns the number of road segments after which the queued comments are sent to the service.
+     *
+     * @return an integer value
+     */
+    public int getCommentBatchSize() {
+        return commentBatchSize;
+    }
+
+    /**
+     * Returns the maximum time a comment is kept in the outbox before it is sent to the service.
+     *
+     * @return a number of milliseconds
+     */
+    public int getCommentBatchDelay() {
+        return commentBatchDelay;
+    }
+
+    /**
+     * Returns the time after which the sending of the comments is retried for the first time, if the service cannot be
+     * reached. The delay doubles with every failed attempt.
+     *
+     * @return a number of milliseconds
+     */
+    public int getCommentRetryDelay() {
+        return commentRetryDelay;
+    }
+
+    /**
+     * Returns the maximum time between two attempts of sending the comments.
+     *
+     * @return a number of milliseconds
+     */
+    public int getCommentRetryMaxDelay() {
+        return commentRetryMaxDelay;
+    }
+
+    /**
+     * Returns the time without panning or zooming after which the layer is painted again in full quality.
+     *
+     * @return a number of milliseconds
+     */
+    public int getRenderSettleDelay() {
+        return renderSettleDelay;
+    }
+
+    /**
+     * Returns the time a paint of the layer may take while the map is panned or zoomed. If a full quality paint takes
+     * longer, the layer is painted in a faster, lower quality mode until the map settles.
+     *
+     * @return a number of milliseconds
+     */
+    public int getRenderFrameBudget() {
+        return renderFrameBudget;
+    }
 }
\ No newline at end of file
@@ -64,6 +64,7 @@ public final class GuiConfig extends BaseConfig {
 
     /* history panel title */
     private final String pnlHistoryTitle;
+    private final String pnlHistoryLoadingTxt;
 
     /* feedback panel title */
     private final String pnlFeedbackTitle;
@@ -124,6 +125,7 @@ public final class GuiConfig extends BaseConfig {
         lblConfidence = readProperty("confidence.lbl");
 
         pnlHistoryTitle = readProperty("details.history.title");
+        pnlHistoryLoadingTxt = readProperty("details.history.loading.txt");
         pnlFeedbackTitle = readProperty("details.feedback.title");
         pnlFeedbackTxt = readProperty("details.feedback.txt");
 
@@ -248,6 +250,10 @@ public final class GuiConfig extends BaseConfig {
         return pnlHistoryTitle;
     }
 
+    public String getPnlHistoryLoadingTxt() {
+        return pnlHistoryLoadingTxt;
+    }
+
     public String getPnlFeedbackTitle() {
         return pnlFeedbackTitle;
     }
@@ -17,23 +17,39 @@ package org.openstreetmap.josm.plugins.directionofflow.util.http;
 
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.io.input.CloseShieldInputStream;
+import org.apache.commons.io.input.CountingInputStream;
+import org.apache.commons.io.output.NullOutputStream;
 
 
 /**
+ * Executes a HTTP request. The connection is not closed after the response was read, such that the JVM can reuse it
+ * for later requests to the same host (keep-alive); for this the response body is always read entirely. Compressed
+ * responses are requested and decompressed transparently.
  *
  * @author Beata
- * @version $Revision: 2 $
+ * @version $Revision: 4 $
  */
 public class HttpConnector {
 
     private static final int READ_TIMEOUT = 0;
     private static final int CONNECT_TIMEOUT = 10000;
+    private static final String GZIP = "gzip";
+    private static final String DEFLATE = "deflate";
 
     private HttpURLConnection connection;
-    private final boolean connected = false;
+    private boolean connected;
+    private int responseCode;
+    private final HttpMetrics metrics = new HttpMetrics();
 
 
     /**
@@ -55,6 +71,7 @@ public class HttpConnector {
         if (method == HttpMethod.POST) {
             connection.setRequestProperty("Content-Type", "application/json; charset=UTF-8");
         }
+        connection.setRequestProperty("Accept-Encoding", GZIP + ", " + DEFLATE);
         connection.setConnectTimeout(CONNECT_TIMEOUT);
         connection.setReadTimeout(READ_TIMEOUT);
     }
@@ -66,26 +83,60 @@ public class HttpConnector {
      * <li>{@link HttpURLConnection#HTTP_OK} the method returns the content of the input stream</li>
      * <li>otherwise the method returns the content of the error stream</li>
      * </ul>
+     * The method returns null if the response has no content, for instance if the response code is
+     * {@link HttpURLConnection#HTTP_NOT_MODIFIED}.
      *
      * @return a {@code String} containing the response content
      * @throws HttpConnectorException if the input/error stream cannot be obtained or the content cannot be read
      */
     public String read() throws HttpConnectorException {
+        return read(new ResponseHandler<String>() {
+
+            @Override
+            public String handle(final InputStream input) throws IOException {
+                return input != null ? HttpUtil.readUtf8Content(input) : null;
+            }
+        });
+    }
+
+    /**
+     * Reads the response from the URL using the given handler. The handler processes the input stream if the response
+     * code is {@link HttpURLConnection#HTTP_OK}, otherwise the error stream. This method does not buffer the content,
+     * the handler reads it as it arrives. If the content is compressed, the handler receives the decompressed content.
+     *
+     * @param handler a {@code ResponseHandler} builds the result from the response content
+     * @return the object built by the handler
+     * @throws HttpConnectorException if the input/error stream cannot be obtained or the content cannot be read
+     */
+    public <T> T read(final ResponseHandler<T> handler) throws HttpConnectorException {
         if (!connected) {
             connect();
         }
-        String response = null;
+        T response = null;
         try {
-            final int responseCode = connection.getResponseCode();
-            if (responseCode == HttpURLConnection.HTTP_OK) {
-                response = HttpUtil.readUtf8Content(connection.getInputStream());
+            responseCode = connection.getResponseCode();
+            metrics.responseReceived();
+            final InputStream input = responseCode == HttpURLConnection.HTTP_OK ? connection.getInputStream()
+                    : connection.getErrorStream();
+            if (input == null) {
+                response = handler.handle(null);
             } else {
-                response = HttpUtil.readUtf8Content(connection.getErrorStream());
+                final CountingInputStream wireInput = new CountingInputStream(input);
+                try {
+                    final CountingInputStream contentInput = new CountingInputStream(decode(wireInput));
+                    response = handler.handle(new CloseShieldInputStream(contentInput));
+
+                    // the connection can be reused only if the response body was read entirely
+                    IOUtils.copy(wireInput, NullOutputStream.NULL_OUTPUT_STREAM);
+                    metrics.transferred(wireInput.getByteCount(), contentInput.getByteCount());
+                } finally {
+                    IOUtils.closeQuietly(wireInput);
+                }
             }
         } catch (final IOException e) {
+            // the state of the connection is unknown, it should not be reused
+            connection.disconnect();
             throw new HttpConnectorException(e);
-        } finally {
-            disconnect();
         }
         return response;
     }
@@ -97,34 +148,105 @@ public class HttpConnector {
      * @throws HttpConnectorException if the output stream cannot be obtained or the content cannot be sent
      */
     public void write(final String json) throws HttpConnectorException {
+        write(json, false);
+    }
+
+    /**
+     * Writes the given content to the message body using 'UTF-8' character encoding. If the compress flag is set, the
+     * content is sent gzip compressed; the server needs to support compressed request bodies.
+     *
+     * @param json a {@code String} in JSON format
+     * @param compress specifies if the content should be compressed or not
+     * @throws HttpConnectorException if the output stream cannot be obtained or the content cannot be sent
+     */
+    public void write(final String json, final boolean compress) throws HttpConnectorException {
+        if (compress && !connected) {
+            connection.setRequestProperty("Content-Encoding", GZIP);
+        }
         if (!connected) {
             connect();
         }
         if (json != null) {
-            try (BufferedWriter out =
-                    new BufferedWriter(new OutputStreamWriter(connection.getOutputStream(), HttpUtil.ENCODING))) {
-                out.write(json);
+            try {
+                final OutputStream output = compress ? new GZIPOutputStream(connection.getOutputStream())
+                        : connection.getOutputStream();
+                try (BufferedWriter out = new BufferedWriter(new OutputStreamWriter(output, HttpUtil.ENCODING))) {
+                    out.write(json);
+                }
             } catch (final IOException e) {
+                connection.disconnect();
                 throw new HttpConnectorException(e);
-            } finally {
-                disconnect();
             }
         }
     }
 
+    /**
+     * Sets a header of the request. Has effect only if it is called before the request is sent.
+     *
+     * @param name the name of the header
+     * @param value the value of the header
+     */
+    public void setRequestHeader(final String name, final String value) {
+        connection.setRequestProperty(name, value);
+    }
+
+    /**
+     * Returns the response code. The code is available after the response was read.
+     *
+     * @return the HTTP status code of the response
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    /**
+     * Returns the value of the given response header. The headers are available after the response was read.
+     *
+     * @param name the name of the header
+     * @return the value of the header, or null if the response does not contain the header
+     */
+    public String getResponseHeader(final String name) {
+        return connection.getHeaderField(name);
+    }
+
+    /**
+     * Returns the metrics of the request. The metrics are complete after the response was read.
+     *
+     * @return a {@code HttpMetrics} object
+     */
+    public HttpMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Closes the connection. May be called from another thread, in order to abort a blocked read; the read fails with
+     * a {@code HttpConnectorException}.
+     */
+    public void abort() {
+        connection.disconnect();
+    }
+
     private void connect() throws HttpConnectorException {
+        metrics.start();
         try {
             connection.connect();
         } catch (final IOException e) {
             throw new HttpConnectorException(e);
         }
+        metrics.connected();
+        connected = true;
     }
 
-    private void disconnect() throws HttpConnectorException {
-        try {
-            connection.disconnect();
-        } catch (final Exception e) {
-            throw new HttpConnectorException(e);
+    private InputStream decode(final InputStream input) throws IOException {
+        final String encoding = connection.getContentEncoding();
+        final InputStream result;
+        if (GZIP.equalsIgnoreCase(encoding)) {
+            result = new GZIPInputStream(input);
+        } else if (DEFLATE.equalsIgnoreCase(encoding)) {
+            result = new InflaterInputStream(input);
+        } else {
+            result = input;
         }
+        return result;
     }
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.util.http;
+
+import java.util.concurrent.TimeUnit;
+
+
+/**
+ * Holds the metrics of a HTTP request. The times are measured in milliseconds; a time is -1 if the corresponding phase
+ * was not reached.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ */
+public final class HttpMetrics {
+
+    private long startTime;
+    private long connectTime = -1;
+    private long timeToFirstByte = -1;
+    private long transferTime = -1;
+    private long wireBytes;
+    private long contentBytes;
+
+
+    void start() {
+        startTime = System.nanoTime();
+    }
+
+    void connected() {
+        connectTime = elapsed();
+    }
+
+    void responseReceived() {
+        timeToFirstByte = elapsed();
+    }
+
+    void transferred(final long wireBytes, final long contentBytes) {
+        transferTime = elapsed() - timeToFirstByte;
+        this.wireBytes = wireBytes;
+        this.contentBytes = contentBytes;
+    }
+
+    private long elapsed() {
+        return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime);
+    }
+
+
+    /**
+     * Returns the time needed to open the connection. If an idle connection was reused, the time is close to zero.
+     *
+     * @return a number of milliseconds
+     */
+    public long getConnectTime() {
+        return connectTime;
+    }
+
+    /**
+     * Returns the time elapsed from the start of the request until the response headers were received.
+     *
+     * @return a number of milliseconds
+     */
+    public long getTimeToFirstByte() {
+        return timeToFirstByte;
+    }
+
+    /**
+     * Returns the time needed to read the response body.
+     *
+     * @return a number of milliseconds
+     */
+    public long getTransferTime() {
+        return transferTime;
+    }
+
+    /**
+     * Returns the number of response body bytes received, as sent by the server.
+     *
+     * @return a number of bytes
+     */
+    public long getWireBytes() {
+        return wireBytes;
+    }
+
+    /**
+     * Returns the number of response body bytes after decompression.
+     *
+     * @return a number of bytes
+     */
+    public long getContentBytes() {
+        return contentBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "connect=" + connectTime + "ms, ttfb=" + timeToFirstByte + "ms, transfer=" + transferTime + "ms, wire="
+                + wireBytes + "B, content=" + contentBytes + "B";
+    }
+}
\ No newline at end of file
@@ -0,0 +1,39 @@
+/*
+ *  Copyright 2015 Telenav, Inc.
+ *
+ *  Licensed under the Apache License, Version 2.0 (the "License");
+ *   you may not use this file except in compliance with the License.
+ *   You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *   Unless required by applicable law or agreed to in writing, software
+ *   distributed under the License is distributed on an "AS IS" BASIS,
+ *   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *   See the License for the specific language governing permissions and
+ *   limitations under the License.
+ */
+package org.openstreetmap.josm.plugins.directionofflow.util.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+
+/**
+ * Processes the content of a HTTP response directly from the response stream.
+ *
+ * @author Beata
+ * @version $Revision: 1 $
+ * @param <T> the type of the object built from the response
+ */
+public interface ResponseHandler<T> {
+
+    /**
+     * Builds an object from the given response content. The stream is closed by the caller.
+     *
+     * @param input the {@code InputStream} of the response
+     * @return an object of type T
+     * @throws IOException if the content cannot be read or has an invalid format
+     */
+    T handle(InputStream input) throws IOException;
+}
@@ -32,4 +32,5 @@ public final class Keys {
     static final String STATUS = "directionOfFlow.filter.status";
     static final String CONFIDENCE_LEVEL = "directionOfFlow.filter.confidence";
     public static final String FILTERS_CHANGED = "directionOfFlow.filter.changed";
+    static final String TILE_RENDERING = "directionOfFlow.render.tiles";
 }
\ No newline at end of file
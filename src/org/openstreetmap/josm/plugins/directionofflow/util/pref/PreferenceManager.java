@@ -77,6 +77,16 @@ public final class PreferenceManager {
         Main.pref.put(Keys.TIP_SUPPRESS, flag);
     }
 
+    /**
+     * Loads the tile rendering flag. If the flag is set, road segments are rendered into cached image tiles in the
+     * background.
+     *
+     * @return a boolean value
+     */
+    public boolean loadTileRenderingFlag() {
+        return Main.pref.getBoolean(Keys.TILE_RENDERING, false);
+    }
+
     /**
      * Loads the search filters from the preference file.
      *